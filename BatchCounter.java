@@ -0,0 +1,180 @@
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Counts the cells in a whole directory or list of 8 bit greyscale images without the GUI. The images are processed by
+ * a StagedBatchExecutor, which reads and decodes them, counts the cells on a pool of worker threads and writes the
+ * overlays in overlapping stages. One CSV row is printed for each image in the order they were given and the total
+ * throughput is printed once all the images have been counted. With the --output option the overlay of the cells found
+ * on every image is written to the given directory. With the --metrics option the time, throughput and allocations of
+ * every stage are collected and printed as a table, JSON or Prometheus text once all the images have been counted.
+ */
+public class BatchCounter {
+  private static final String THREADS_OPTION = "--threads=";
+  private static final String QUEUE_OPTION = "--queue=";
+  private static final String OUTPUT_OPTION = "--output=";
+  private static final String METRICS_OPTION = "--metrics=";
+  private static final String METRICS_FILE_OPTION = "--metrics-file=";
+  private static final String BORDER_OPTION = "--border=";
+
+  /**
+   * The main method parses the options and the files or directories to count and prints the results as CSV rows.
+   *
+   * @param args String[]; The optional --threads=n, --queue=n, --output=directory, --metrics=table|json|prometheus,
+   *             --metrics-file=f and --border=constant|replicate|reflect options followed by the files or directories
+   *             of images to be counted. The queue is the number of images that may wait between two stages, by default
+   *             twice the number of threads. The metrics are written to the metrics file if there is one, otherwise to
+   *             standard error.
+   */
+  public static void main(String[] args) {
+    int threads = Runtime.getRuntime().availableProcessors();
+    int queueCapacity = 0;
+    File outputDirectory = null;
+    PipelineMetrics.exportFormats metricsFormat = null;
+    File metricsFile = null;
+    CellCountPipeline.borderModes borderMode = CellCountPipeline.borderModes.CONSTANT;
+    List<File> files = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.startsWith(METRICS_OPTION)) {
+        try {
+          metricsFormat = PipelineMetrics.exportFormats.valueOf(
+            arg.substring(METRICS_OPTION.length()).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+          System.err.println("The metrics format must be table, json or prometheus: " + arg);
+          return;
+        }
+      } else if (arg.startsWith(BORDER_OPTION)) {
+        try {
+          borderMode = CellCountPipeline.borderModes.valueOf(
+            arg.substring(BORDER_OPTION.length()).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+          System.err.println("The border mode must be constant, replicate or reflect: " + arg);
+          return;
+        }
+      } else if (arg.startsWith(METRICS_FILE_OPTION)) {
+        metricsFile = new File(arg.substring(METRICS_FILE_OPTION.length()));
+      } else if (arg.startsWith(OUTPUT_OPTION)) {
+        outputDirectory = new File(arg.substring(OUTPUT_OPTION.length()));
+      } else if (arg.startsWith(QUEUE_OPTION)) {
+        try {
+          queueCapacity = Integer.parseInt(arg.substring(QUEUE_OPTION.length()));
+        } catch (NumberFormatException e) {
+          queueCapacity = 0;
+        }
+        if (queueCapacity < 1) {
+          System.err.println("The queue capacity must be a positive integer: " + arg);
+          return;
+        }
+      } else if (arg.startsWith(THREADS_OPTION)) {
+        try {
+          threads = Integer.parseInt(arg.substring(THREADS_OPTION.length()));
+        } catch (NumberFormatException e) {
+          threads = 0;
+        }
+        if (threads < 1) {
+          System.err.println("The number of threads must be a positive integer: " + arg);
+          return;
+        }
+      } else {
+        addImageFiles(new File(arg), files);
+      }
+    }
+
+    if (files.isEmpty()) {
+      System.err.println("Usage: java Counter --batch [--threads=<n>] [--queue=<n>] [--output=<directory>]"
+        + " [--metrics=<table|json|prometheus>] [--metrics-file=<file>] [--border=<constant|replicate|reflect>]"
+        + " <directory or filenames>");
+      return;
+    }
+    if (outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+      System.err.println("Could not create the output directory " + outputDirectory);
+      return;
+    }
+
+    if (metricsFile != null && metricsFormat == null) {
+      metricsFormat = PipelineMetrics.exportFormats.TABLE;
+    }
+    PipelineMetrics metrics = metricsFormat == null ? null : new PipelineMetrics();
+    StagedBatchExecutor executor = new StagedBatchExecutor(threads, queueCapacity > 0 ? queueCapacity : 2 * threads,
+      outputDirectory, metrics, borderMode);
+    try {
+      long start = System.nanoTime();
+      List<CompletableFuture<String>> results = executor.submit(files);
+
+      int processed = 0;
+      System.out.println("file,width,height,cells,milliseconds");
+      for (int i = 0; i < results.size(); i++) {
+        try {
+          System.out.println(results.get(i).get());
+          processed++;
+        } catch (ExecutionException e) {
+          System.err.println("Could not count " + files.get(i) + ": " + e.getCause().getMessage());
+        }
+      }
+
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.err.printf(Locale.ROOT, "Counted %d images in %.3f s on %d threads (%.2f images/sec)%n", processed,
+        seconds, threads, processed / seconds);
+      System.err.printf(Locale.ROOT, "Reused %d image planes and allocated %d%n", executor.getBufferHits(),
+        executor.getBufferAllocations());
+
+      if (metrics != null) {
+        String text = metrics.format(metricsFormat);
+        if (metricsFile == null) {
+          System.err.print(text);
+        } else {
+          try {
+            Files.write(metricsFile.toPath(), text.getBytes(StandardCharsets.UTF_8));
+          } catch (IOException e) {
+            System.err.println("Could not write the metrics to " + metricsFile + ": " + e.getMessage());
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Adds the given file to the list, or every image file in it in name order if it is a directory.
+   *
+   * @param file  File; A file or directory given by the user.
+   * @param files List of File; The list of files that are to be counted.
+   */
+  private static void addImageFiles(File file, List<File> files) {
+    if (!file.isDirectory()) {
+      files.add(file);
+      return;
+    }
+
+    Set<String> suffixes = new HashSet<>();
+    for (String suffix : ImageIO.getReaderFileSuffixes()) {
+      suffixes.add(suffix.toLowerCase(Locale.ROOT));
+    }
+    File[] children = file.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      String name = child.getName();
+      int dot = name.lastIndexOf('.');
+      if (child.isFile() && dot >= 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+        files.add(child);
+      }
+    }
+  }
+}
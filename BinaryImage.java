@@ -0,0 +1,199 @@
+import java.util.Arrays;
+
+/**
+ * A binary image that stores one bit per pixel, packed into the words of a long array row by row. Bit x % 64 of word
+ * x / 64 of a row holds pixel x, so shifting a word to the left moves its pixels to the right. The bits after the last
+ * pixel of every row are always zero.
+ */
+public class BinaryImage {
+  private final int width;
+  private final int height;
+  private final int wordsPerRow;
+  private final long[] words;
+
+  /**
+   * Constructor for the BinaryImage class that creates an image of the given size where every pixel is unset.
+   *
+   * @param width  int; The width of the image in pixels.
+   * @param height int; The height of the image in pixels.
+   */
+  public BinaryImage(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.wordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+    this.words = new long[wordsPerRow * height];
+  }
+
+  /**
+   * Creates a binary image where exactly the pixels of the greyscale image with the given intensity are set.
+   *
+   * @param image     GreyscaleImage; The greyscale image that is to be converted.
+   * @param intensity int; The intensity of the pixels that are to be set.
+   * @return BinaryImage; Returns a new binary image of the same size.
+   */
+  public static BinaryImage fromGreyscaleImage(GreyscaleImage image, int intensity) {
+    return fromGreyscaleImage(image, intensity, new BinaryImage(image.getWidth(), image.getHeight()));
+  }
+
+  /**
+   * Overwrites a binary image so that exactly the pixels of the greyscale image with the given intensity are set.
+   *
+   * @param image       GreyscaleImage; The greyscale image that is to be converted.
+   * @param intensity   int; The intensity of the pixels that are to be set.
+   * @param binaryImage BinaryImage; The binary image of the same size, e.g. from a BufferPool, whose pixels are all
+   *                    overwritten.
+   * @return BinaryImage; Returns the binary image.
+   */
+  public static BinaryImage fromGreyscaleImage(GreyscaleImage image, int intensity, BinaryImage binaryImage) {
+    int width = image.getWidth();
+    binaryImage.clear();
+    byte[] pixels = image.getPixels();
+    byte value = (byte) intensity;
+    for (int y = 0; y < binaryImage.height; y++) {
+      int pixelOffset = y * width;
+      int wordOffset = y * binaryImage.wordsPerRow;
+      for (int x = 0; x < width; x++) {
+        if (pixels[pixelOffset + x] == value) {
+          binaryImage.words[wordOffset + (x >>> 6)] |= 1L << x;
+        }
+      }
+    }
+    return binaryImage;
+  }
+
+  /**
+   * Creates a greyscale image from this binary image.
+   *
+   * @param setIntensity   int; The intensity of the pixels that are set.
+   * @param unsetIntensity int; The intensity of the pixels that are not set.
+   * @return GreyscaleImage; Returns a new greyscale image of the same size.
+   */
+  public GreyscaleImage toGreyscaleImage(int setIntensity, int unsetIntensity) {
+    return toGreyscaleImage(setIntensity, unsetIntensity, new GreyscaleImage(width, height));
+  }
+
+  /**
+   * Overwrites a greyscale image with this binary image.
+   *
+   * @param setIntensity   int; The intensity of the pixels that are set.
+   * @param unsetIntensity int; The intensity of the pixels that are not set.
+   * @param image          GreyscaleImage; The greyscale image of the same size whose pixels are all overwritten.
+   * @return GreyscaleImage; Returns the greyscale image.
+   */
+  public GreyscaleImage toGreyscaleImage(int setIntensity, int unsetIntensity, GreyscaleImage image) {
+    byte[] pixels = image.getPixels();
+    byte set = (byte) setIntensity;
+    byte unset = (byte) unsetIntensity;
+    for (int y = 0; y < height; y++) {
+      int pixelOffset = y * width;
+      int wordOffset = y * wordsPerRow;
+      for (int x = 0; x < width; x++) {
+        pixels[pixelOffset + x] = (words[wordOffset + (x >>> 6)] & (1L << x)) != 0 ? set : unset;
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Checks whether a pixel is set.
+   *
+   * @param x int; X coordinate of the image.
+   * @param y int; Y coordinate of the image.
+   * @return boolean; Returns true if the pixel is set, otherwise false.
+   */
+  public boolean get(int x, int y) {
+    return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+  }
+
+  /**
+   * Sets or unsets a pixel.
+   *
+   * @param x     int; X coordinate of the image.
+   * @param y     int; Y coordinate of the image.
+   * @param value boolean; True to set the pixel, false to unset it.
+   */
+  public void set(int x, int y, boolean value) {
+    int index = y * wordsPerRow + (x >>> 6);
+    if (value) {
+      words[index] |= 1L << x;
+    } else {
+      words[index] &= ~(1L << x);
+    }
+  }
+
+  /**
+   * Inverts every pixel of this image in place, leaving the bits after the last pixel of every row unset.
+   */
+  public void invert() {
+    long lastWordMask = getLastWordMask();
+    for (int y = 0; y < height; y++) {
+      int wordOffset = y * wordsPerRow;
+      for (int k = 0; k < wordsPerRow; k++) {
+        words[wordOffset + k] = ~words[wordOffset + k];
+      }
+      words[wordOffset + wordsPerRow - 1] &= lastWordMask;
+    }
+  }
+
+  /**
+   * Creates a copy of this image.
+   *
+   * @return BinaryImage; Returns a new binary image with the same pixels set.
+   */
+  public BinaryImage copy() {
+    BinaryImage copy = new BinaryImage(width, height);
+    System.arraycopy(words, 0, copy.words, 0, words.length);
+    return copy;
+  }
+
+  /**
+   * Unsets every pixel of this image.
+   */
+  public void clear() {
+    Arrays.fill(words, 0L);
+  }
+
+  /**
+   * Counts the pixels that are set.
+   *
+   * @return int; Returns the number of pixels that are set.
+   */
+  public int cardinality() {
+    int count = 0;
+    for (long word : words) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /**
+   * Gets the mask of the bits of the last word of a row that belong to pixels of the image.
+   *
+   * @return long; Returns the mask of the valid bits of the last word of every row.
+   */
+  long getLastWordMask() {
+    int remainder = width % Long.SIZE;
+    return remainder == 0 ? -1L : (1L << remainder) - 1;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getWordsPerRow() {
+    return wordsPerRow;
+  }
+
+  /**
+   * Gets the backing array of the image, where row y starts at word y * getWordsPerRow().
+   *
+   * @return long[]; Returns the packed pixels, which are not copied.
+   */
+  public long[] getWords() {
+    return words;
+  }
+}
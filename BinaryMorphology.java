@@ -0,0 +1,381 @@
+/**
+ * Morphological operations on bit-packed binary images. Small structuring elements are given as the offsets {dx, dy}
+ * of their pixels from their centre, and every offset is applied to a whole row at once by shifting its words and
+ * combining them with OR, so 64 pixels are processed by every instruction. Large structuring elements use algorithms
+ * whose cost does not grow with the radius: squares are dilated separably, along the rows by doubling shifts and along
+ * the columns with the van Herk/Gil-Werman algorithm, and diamonds and disks by thresholding the city block or the
+ * euclidean distance transform. Pixels outside the image never contribute to a dilation and never remove a pixel in
+ * an erosion. The full-size temporaries of the erosions and of the large structuring elements are taken from a
+ * BufferPool when one is given.
+ */
+public class BinaryMorphology {
+  private static final int MAX_SHIFTED_OFFSETS = 64;
+
+  private BinaryMorphology() {
+  }
+
+  /**
+   * Dilates (grows) the set pixels of the source image by the structuring element, choosing the fastest algorithm for
+   * its shape and size.
+   *
+   * @param source  BinaryImage; The image that is to be dilated.
+   * @param target  BinaryImage; The image of the same size that the result is written to.
+   * @param element StructuringElement; The structuring element.
+   */
+  public static void dilate(BinaryImage source, BinaryImage target, StructuringElement element) {
+    dilate(source, target, element, new BufferPool(0));
+  }
+
+  /**
+   * Dilates the set pixels of the source image by the structuring element, taking the temporary planes of the large
+   * structuring elements from the pool and returning them to it.
+   *
+   * @param source     BinaryImage; The image that is to be dilated.
+   * @param target     BinaryImage; The image of the same size that the result is written to.
+   * @param element    StructuringElement; The structuring element.
+   * @param bufferPool BufferPool; The pool of the temporary planes.
+   */
+  public static void dilate(BinaryImage source, BinaryImage target, StructuringElement element,
+                            BufferPool bufferPool) {
+    int radius = element.getRadius();
+    if (element.getShape() == StructuringElement.shapes.SQUARE && radius > 1) {
+      dilateSquare(source, target, radius, bufferPool);
+      return;
+    }
+
+    int[][] offsets = element.getOffsets();
+    if (offsets.length <= MAX_SHIFTED_OFFSETS) {
+      dilate(source, target, offsets);
+    } else {
+      dilateByDistance(source, target, element, bufferPool);
+    }
+  }
+
+  /**
+   * Erodes (shrinks) the set pixels of the source image by the structuring element, as the inverse of the dilation of
+   * the inverse.
+   *
+   * @param source  BinaryImage; The image that is to be eroded.
+   * @param target  BinaryImage; The image of the same size that the result is written to.
+   * @param element StructuringElement; The structuring element.
+   */
+  public static void erode(BinaryImage source, BinaryImage target, StructuringElement element) {
+    erode(source, target, element, new BufferPool(0));
+  }
+
+  /**
+   * Erodes the set pixels of the source image by the structuring element, taking the inverse of the source and the
+   * temporary planes of the dilation from the pool, so that no image is allocated once the pool holds them.
+   *
+   * @param source     BinaryImage; The image that is to be eroded.
+   * @param target     BinaryImage; The image of the same size that the result is written to.
+   * @param element    StructuringElement; The structuring element.
+   * @param bufferPool BufferPool; The pool of the temporary planes.
+   */
+  public static void erode(BinaryImage source, BinaryImage target, StructuringElement element,
+                           BufferPool bufferPool) {
+    BinaryImage inverse = bufferPool.acquireBinaryImage(source.getWidth(), source.getHeight());
+    System.arraycopy(source.getWords(), 0, inverse.getWords(), 0, source.getWords().length);
+    inverse.invert();
+    dilate(inverse, target, element, bufferPool);
+    bufferPool.release(inverse);
+    target.invert();
+  }
+
+  /**
+   * Dilates (grows) the set pixels of the source image: a pixel q of the target image is set if the source pixel
+   * q - offset is set for any of the offsets.
+   *
+   * @param source  BinaryImage; The image that is to be dilated.
+   * @param target  BinaryImage; The image of the same size that the result is written to.
+   * @param offsets int[][]; The offsets {dx, dy} of the pixels of the structuring element.
+   */
+  public static void dilate(BinaryImage source, BinaryImage target, int[][] offsets) {
+    int height = source.getHeight();
+    int wordsPerRow = source.getWordsPerRow();
+    long[] sourceWords = source.getWords();
+    long[] targetWords = target.getWords();
+    long lastWordMask = source.getLastWordMask();
+    target.clear();
+
+    for (int y = 0; y < height; y++) {
+      int targetOffset = y * wordsPerRow;
+      for (int[] offset : offsets) {
+        int sourceRow = y - offset[1];
+        if (sourceRow >= 0 && sourceRow < height) {
+          orShiftedRow(sourceWords, sourceRow * wordsPerRow, targetWords, targetOffset, wordsPerRow, offset[0]);
+        }
+      }
+      targetWords[targetOffset + wordsPerRow - 1] &= lastWordMask;
+    }
+  }
+
+  /**
+   * Erodes (shrinks) the set pixels of the source image: a pixel q of the target image is set if the source pixel
+   * q - offset is set for every offset where q - offset is within the image. It is computed as the inverse of the
+   * dilation of the inverse.
+   *
+   * @param source  BinaryImage; The image that is to be eroded.
+   * @param target  BinaryImage; The image of the same size that the result is written to.
+   * @param offsets int[][]; The offsets {dx, dy} of the pixels of the structuring element.
+   */
+  public static void erode(BinaryImage source, BinaryImage target, int[][] offsets) {
+    BinaryImage inverse = source.copy();
+    inverse.invert();
+    dilate(inverse, target, offsets);
+    target.invert();
+  }
+
+  /**
+   * Dilates the source image by a square, first along the rows and then along the columns. Along a row the runs of
+   * pixels to the left and to the right of every pixel are built by doubling: the OR of a run of m pixels combined with
+   * itself shifted by m gives the run of 2m pixels, so only a logarithmic number of shifts of 64 pixel words is needed.
+   * Along the columns the van Herk/Gil-Werman algorithm splits the rows into blocks of the window height and keeps the
+   * OR of every row with the rows before and after it in its block, so that every window is the OR of just two of them.
+   *
+   * @param source     BinaryImage; The image that is to be dilated.
+   * @param target     BinaryImage; The image of the same size that the result is written to.
+   * @param radius     int; The radius of the square.
+   * @param bufferPool BufferPool; The pool of the planes of the rows and of the column prefixes and suffixes.
+   */
+  private static void dilateSquare(BinaryImage source, BinaryImage target, int radius, BufferPool bufferPool) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int wordsPerRow = source.getWordsPerRow();
+    long[] sourceWords = source.getWords();
+    long lastWordMask = source.getLastWordMask();
+    int size = 2 * radius + 1;
+
+    // Along the rows, as the OR of the runs of radius + 1 pixels ending and starting at every pixel.
+    BinaryImage rowImage = bufferPool.acquireBinaryImage(width, height);
+    rowImage.clear();
+    long[] rows = rowImage.getWords();
+    long[] run = new long[wordsPerRow];
+    long[] doubled = new long[wordsPerRow];
+    for (int y = 0; y < height; y++) {
+      int rowOffset = y * wordsPerRow;
+      for (int direction = -1; direction <= 1; direction += 2) {
+        System.arraycopy(sourceWords, rowOffset, run, 0, wordsPerRow);
+        int runLength = 1;
+        int rowsLength = 0;
+        for (int length = radius + 1; length > 0; length >>= 1) {
+          if ((length & 1) != 0) {
+            orShiftedRow(run, 0, rows, rowOffset, wordsPerRow, direction * rowsLength);
+            rowsLength += runLength;
+          }
+          if (length > 1) {
+            System.arraycopy(run, 0, doubled, 0, wordsPerRow);
+            orShiftedRow(run, 0, doubled, 0, wordsPerRow, direction * runLength);
+            long[] swap = run;
+            run = doubled;
+            doubled = swap;
+            runLength *= 2;
+          }
+        }
+      }
+      rows[rowOffset + wordsPerRow - 1] &= lastWordMask;
+    }
+
+    // Along the columns, with radius empty rows added above and below the image so that every window is complete.
+    int paddedHeight = height + 2 * radius;
+    BinaryImage prefixImage = bufferPool.acquireBinaryImage(width, paddedHeight);
+    BinaryImage suffixImage = bufferPool.acquireBinaryImage(width, paddedHeight);
+    long[] prefix = prefixImage.getWords();
+    long[] suffix = suffixImage.getWords();
+    for (int p = 0; p < paddedHeight; p++) {
+      int offset = p * wordsPerRow;
+      int y = p - radius;
+      boolean blockStart = p % size == 0;
+      for (int k = 0; k < wordsPerRow; k++) {
+        long word = y >= 0 && y < height ? rows[y * wordsPerRow + k] : 0L;
+        prefix[offset + k] = blockStart ? word : prefix[offset - wordsPerRow + k] | word;
+      }
+    }
+    for (int p = paddedHeight - 1; p >= 0; p--) {
+      int offset = p * wordsPerRow;
+      int y = p - radius;
+      boolean blockEnd = p % size == size - 1 || p == paddedHeight - 1;
+      for (int k = 0; k < wordsPerRow; k++) {
+        long word = y >= 0 && y < height ? rows[y * wordsPerRow + k] : 0L;
+        suffix[offset + k] = blockEnd ? word : suffix[offset + wordsPerRow + k] | word;
+      }
+    }
+
+    long[] targetWords = target.getWords();
+    for (int y = 0; y < height; y++) {
+      int windowStart = y * wordsPerRow;
+      int windowEnd = (y + 2 * radius) * wordsPerRow;
+      for (int k = 0; k < wordsPerRow; k++) {
+        targetWords[y * wordsPerRow + k] = suffix[windowStart + k] | prefix[windowEnd + k];
+      }
+    }
+    bufferPool.release(rowImage);
+    bufferPool.release(prefixImage);
+    bufferPool.release(suffixImage);
+  }
+
+  /**
+   * Dilates the source image by a diamond or a disk by computing, for every pixel, the distance to the nearest set
+   * pixel of the source and setting the pixels that are no further away than the radius. The city block distance of a
+   * diamond is computed exactly by one forward and one backward scan, and the squared euclidean distance of a disk by
+   * the separable lower envelope algorithm of Felzenszwalb and Huttenlocher. Both cost the same per pixel whatever the
+   * radius.
+   *
+   * @param source     BinaryImage; The image that is to be dilated.
+   * @param target     BinaryImage; The image of the same size that the result is written to.
+   * @param element    StructuringElement; A diamond or disk structuring element.
+   * @param bufferPool BufferPool; The pool of the plane of the distances.
+   */
+  private static void dilateByDistance(BinaryImage source, BinaryImage target, StructuringElement element,
+                                       BufferPool bufferPool) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int radius = element.getRadius();
+    // Distances beyond the radius are capped, as they are only compared with it.
+    int far = radius + 1;
+    int[] distances = bufferPool.acquireIntPlane(width * height);
+
+    if (element.getShape() == StructuringElement.shapes.DIAMOND) {
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          int distance = source.get(x, y) ? 0 : far;
+          if (y > 0) {
+            distance = Math.min(distance, distances[(y - 1) * width + x] + 1);
+          }
+          if (x > 0) {
+            distance = Math.min(distance, distances[y * width + x - 1] + 1);
+          }
+          distances[y * width + x] = Math.min(distance, far);
+        }
+      }
+      for (int y = height - 1; y >= 0; y--) {
+        for (int x = width - 1; x >= 0; x--) {
+          int distance = distances[y * width + x];
+          if (y < height - 1) {
+            distance = Math.min(distance, distances[(y + 1) * width + x] + 1);
+          }
+          if (x < width - 1) {
+            distance = Math.min(distance, distances[y * width + x + 1] + 1);
+          }
+          distances[y * width + x] = distance;
+        }
+      }
+      threshold(distances, target, radius);
+      bufferPool.release(distances);
+      return;
+    }
+
+    // The distance to the nearest set pixel in the same column, first downwards and then upwards.
+    for (int x = 0; x < width; x++) {
+      int distance = far;
+      for (int y = 0; y < height; y++) {
+        distance = source.get(x, y) ? 0 : Math.min(distance + 1, far);
+        distances[y * width + x] = distance;
+      }
+      distance = far;
+      for (int y = height - 1; y >= 0; y--) {
+        distance = source.get(x, y) ? 0 : Math.min(distance + 1, far);
+        distances[y * width + x] = Math.min(distances[y * width + x], distance);
+      }
+    }
+
+    // The squared distance along each row is the lower envelope of the parabolas (x - u)^2 + column distance(u)^2.
+    long[] squaredColumnDistances = new long[width];
+    int[] parabolas = new int[width];
+    double[] boundaries = new double[width + 1];
+    for (int y = 0; y < height; y++) {
+      int rowOffset = y * width;
+      for (int u = 0; u < width; u++) {
+        long columnDistance = distances[rowOffset + u];
+        squaredColumnDistances[u] = columnDistance * columnDistance;
+      }
+
+      int last = 0;
+      parabolas[0] = 0;
+      boundaries[0] = Double.NEGATIVE_INFINITY;
+      boundaries[1] = Double.POSITIVE_INFINITY;
+      for (int u = 1; u < width; u++) {
+        double intersection = intersect(squaredColumnDistances, parabolas[last], u);
+        while (intersection <= boundaries[last]) {
+          last--;
+          intersection = intersect(squaredColumnDistances, parabolas[last], u);
+        }
+        last++;
+        parabolas[last] = u;
+        boundaries[last] = intersection;
+        boundaries[last + 1] = Double.POSITIVE_INFINITY;
+      }
+
+      int parabola = 0;
+      for (int x = 0; x < width; x++) {
+        while (boundaries[parabola + 1] < x) {
+          parabola++;
+        }
+        long dx = x - parabolas[parabola];
+        long squaredDistance = dx * dx + squaredColumnDistances[parabolas[parabola]];
+        distances[rowOffset + x] = squaredDistance <= element.getRadiusSquared() ? 0 : 1;
+      }
+    }
+    threshold(distances, target, 0);
+    bufferPool.release(distances);
+  }
+
+  /**
+   * Finds the X coordinate where the parabolas rooted at two columns of a row intersect.
+   *
+   * @param squaredColumnDistances long[]; The squared column distance of every pixel of the row.
+   * @param u                      int; The column of the first parabola.
+   * @param v                      int; The column of the second parabola, which is greater than u.
+   * @return double; Returns the X coordinate of the intersection.
+   */
+  private static double intersect(long[] squaredColumnDistances, int u, int v) {
+    return ((squaredColumnDistances[v] + (long) v * v) - (squaredColumnDistances[u] + (long) u * u))
+      / (2.0 * (v - u));
+  }
+
+  /**
+   * Sets exactly the pixels of the target image whose distance is no greater than the limit.
+   *
+   * @param distances int[]; The distance of every pixel in row-major order.
+   * @param target    BinaryImage; The image that the result is written to.
+   * @param limit     int; The largest distance of a pixel that is set.
+   */
+  private static void threshold(int[] distances, BinaryImage target, int limit) {
+    int width = target.getWidth();
+    target.clear();
+    for (int y = 0; y < target.getHeight(); y++) {
+      for (int x = 0; x < width; x++) {
+        if (distances[y * width + x] <= limit) {
+          target.set(x, y, true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Combines a row of the source with a row of the target using OR, after shifting the source row by the given number
+   * of pixels, so that bit x of the target row receives bit x - shift of the source row.
+   *
+   * @param source       long[]; The words of the source image.
+   * @param sourceOffset int; The index of the first word of the source row.
+   * @param target       long[]; The words of the target image.
+   * @param targetOffset int; The index of the first word of the target row.
+   * @param words        int; The number of words in a row.
+   * @param shift        int; The number of pixels to shift by, positive to the right and negative to the left.
+   */
+  static void orShiftedRow(long[] source, int sourceOffset, long[] target, int targetOffset, int words, int shift) {
+    int wordShift = shift >> 6;
+    int bitShift = shift & 63;
+    for (int k = 0; k < words; k++) {
+      int from = k - wordShift;
+      long word = 0;
+      if (from >= 0 && from < words) {
+        word = source[sourceOffset + from] << bitShift;
+      }
+      if (bitShift != 0 && from - 1 >= 0 && from - 1 < words) {
+        word |= source[sourceOffset + from - 1] >>> (Long.SIZE - bitShift);
+      }
+      target[targetOffset + k] |= word;
+    }
+  }
+}
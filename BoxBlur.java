@@ -0,0 +1,110 @@
+/**
+ * A box blur of any radius that is computed with running sums, so it costs the same per pixel whatever the radius.
+ * For every row a sum of each column over the rows of the neighbourhood is kept up to date by adding the row entering
+ * the neighbourhood and subtracting the row leaving it, and the sum over the columns of the neighbourhood is slid
+ * along the row in the same way. Pixels outside the image take the value of the nearest pixel on the border.
+ * <p>
+ * Repeating a box blur approximates a gaussian blur, so a gaussian blur of any sigma is applied as three box blurs with
+ * radii chosen to match the sigma.
+ */
+public class BoxBlur implements NeighbourhoodOperation {
+  private static final int GAUSSIAN_PASSES = 3;
+  private final int radius;
+
+  /**
+   * Constructor for the BoxBlur class.
+   *
+   * @param radius int; The radius of the box, 1 for a 3x3 box, 2 for a 5x5 box and so on. A radius of 0 copies the
+   *               image.
+   */
+  public BoxBlur(int radius) {
+    if (radius < 0) {
+      throw new IllegalArgumentException("The radius must not be negative but was " + radius);
+    }
+    this.radius = radius;
+  }
+
+  /**
+   * Creates the box blurs which, applied one after the other, approximate a gaussian blur with the given standard
+   * deviation. The box sizes follow Kovesi's "Fast almost-gaussian filtering", using two sizes of odd width whose
+   * combined variance is as close as possible to the variance of the gaussian.
+   *
+   * @param sigma double; The standard deviation of the gaussian in pixels.
+   * @return BoxBlur[]; Returns the box blurs that are to be applied in order.
+   */
+  public static BoxBlur[] approximateGaussian(double sigma) {
+    if (!(sigma > 0)) {
+      throw new IllegalArgumentException("The sigma must be positive but was " + sigma);
+    }
+    int n = GAUSSIAN_PASSES;
+    int lowerWidth = (int) Math.floor(Math.sqrt(12 * sigma * sigma / n + 1));
+    if (lowerWidth % 2 == 0) {
+      lowerWidth--;
+    }
+    int upperWidth = lowerWidth + 2;
+    long lowerPasses = Math.round((12 * sigma * sigma - n * lowerWidth * lowerWidth - 4 * n * lowerWidth - 3 * n)
+      / (-4.0 * lowerWidth - 4));
+    lowerPasses = Math.max(0, Math.min(n, lowerPasses));
+
+    BoxBlur[] passes = new BoxBlur[n];
+    for (int i = 0; i < n; i++) {
+      int width = i < lowerPasses ? lowerWidth : upperWidth;
+      passes[i] = new BoxBlur((width - 1) / 2);
+    }
+    return passes;
+  }
+
+  public int getRadius() {
+    return radius;
+  }
+
+  @Override
+  public void apply(GreyscaleImage source, GreyscaleImage target, int fromRow, int toRow) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    byte[] pixels = source.getPixels();
+    byte[] result = target.getPixels();
+    int size = 2 * radius + 1;
+    int area = size * size;
+    int[] columnSums = new int[width];
+
+    for (int v = fromRow - radius; v <= fromRow + radius; v++) {
+      int rowOffset = clamp(v, height) * width;
+      for (int x = 0; x < width; x++) {
+        columnSums[x] += pixels[rowOffset + x] & 0xFF;
+      }
+    }
+
+    for (int y = fromRow; y < toRow; y++) {
+      if (y > fromRow) {
+        int enteringOffset = clamp(y + radius, height) * width;
+        int leavingOffset = clamp(y - radius - 1, height) * width;
+        for (int x = 0; x < width; x++) {
+          columnSums[x] += (pixels[enteringOffset + x] & 0xFF) - (pixels[leavingOffset + x] & 0xFF);
+        }
+      }
+
+      int total = 0;
+      for (int u = -radius; u <= radius; u++) {
+        total += columnSums[clamp(u, width)];
+      }
+      int rowOffset = y * width;
+      for (int x = 0; x < width; x++) {
+        result[rowOffset + x] = (byte) ((total + area / 2) / area);
+        total += columnSums[clamp(x + radius + 1, width)] - columnSums[clamp(x - radius, width)];
+      }
+    }
+  }
+
+  /**
+   * Clamps a coordinate to the range of the image, so that pixels outside the image take the value of the nearest
+   * pixel on the border.
+   *
+   * @param coordinate int; The X or Y coordinate.
+   * @param length     int; The width or height of the image.
+   * @return int; Returns the nearest coordinate that is within the image.
+   */
+  private static int clamp(int coordinate, int length) {
+    return coordinate < 0 ? 0 : (coordinate >= length ? length - 1 : coordinate);
+  }
+}
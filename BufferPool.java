@@ -0,0 +1,216 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A pool of the greyscale and binary image planes that the operations of the image processing pipeline write their
+ * results to, and of the int planes that the region labeling and the distance transforms work on. An operation takes a
+ * back plane from the pool, writes its result to it and swaps it with the front plane, which goes back to the pool,
+ * so consecutive operations ping-pong between the same two planes instead of allocating a new plane per operation.
+ * The temporary planes of the morphing operations and the label plane of the region labeling are taken from the pool
+ * and returned to it in the same way. A pool that is shared by the pipelines of consecutive images of the same size
+ * reuses the planes across images as well.
+ * <p>
+ * The pool keeps at most the given number of bytes of free planes and drops the planes that have been free the longest
+ * when it is full. The planes it hands out have undefined contents. A pool is not thread-safe, so every thread that
+ * runs pipelines needs its own pool.
+ */
+public class BufferPool {
+  /**
+   * The default number of bytes of free planes that a pool keeps, which holds a few planes of a large image.
+   */
+  public static final long DEFAULT_MAX_BYTES = 256L << 20;
+  private final long maxBytes;
+  private final ArrayDeque<GreyscaleImage> greyscaleImages = new ArrayDeque<>();
+  private final ArrayDeque<BinaryImage> binaryImages = new ArrayDeque<>();
+  private final ArrayDeque<int[]> intPlanes = new ArrayDeque<>();
+  private long retainedBytes;
+  private long hits;
+  private long allocations;
+
+  /**
+   * Constructor for the BufferPool class with the default size.
+   */
+  public BufferPool() {
+    this(DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Constructor for the BufferPool class.
+   *
+   * @param maxBytes long; The maximum number of bytes of the free planes that are kept, 0 to keep none.
+   */
+  public BufferPool(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("The size of the pool must not be negative but was " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Takes a greyscale image of the given size from the pool, or allocates one if there is none.
+   *
+   * @param width  int; The width of the image.
+   * @param height int; The height of the image.
+   * @return GreyscaleImage; Returns an image of the given size with undefined contents.
+   */
+  public GreyscaleImage acquireGreyscaleImage(int width, int height) {
+    for (Iterator<GreyscaleImage> iterator = greyscaleImages.iterator(); iterator.hasNext(); ) {
+      GreyscaleImage image = iterator.next();
+      if (image.getWidth() == width && image.getHeight() == height) {
+        iterator.remove();
+        retainedBytes -= getSize(image);
+        hits++;
+        return image;
+      }
+    }
+    allocations++;
+    return new GreyscaleImage(width, height);
+  }
+
+  /**
+   * Takes a binary image of the given size from the pool, or allocates one if there is none.
+   *
+   * @param width  int; The width of the image.
+   * @param height int; The height of the image.
+   * @return BinaryImage; Returns an image of the given size with undefined contents.
+   */
+  public BinaryImage acquireBinaryImage(int width, int height) {
+    for (Iterator<BinaryImage> iterator = binaryImages.iterator(); iterator.hasNext(); ) {
+      BinaryImage image = iterator.next();
+      if (image.getWidth() == width && image.getHeight() == height) {
+        iterator.remove();
+        retainedBytes -= getSize(image);
+        hits++;
+        return image;
+      }
+    }
+    allocations++;
+    return new BinaryImage(width, height);
+  }
+
+  /**
+   * Takes an int plane of the given length from the pool, or allocates one if there is none.
+   *
+   * @param length int; The number of values of the plane, e.g. one per pixel of an image.
+   * @return int[]; Returns a plane of the given length with undefined contents.
+   */
+  public int[] acquireIntPlane(int length) {
+    for (Iterator<int[]> iterator = intPlanes.iterator(); iterator.hasNext(); ) {
+      int[] plane = iterator.next();
+      if (plane.length == length) {
+        iterator.remove();
+        retainedBytes -= getSize(plane);
+        hits++;
+        return plane;
+      }
+    }
+    allocations++;
+    return new int[length];
+  }
+
+  /**
+   * Returns a greyscale image to the pool. It must not be used by the caller any more.
+   *
+   * @param image GreyscaleImage; The image, or null.
+   */
+  public void release(GreyscaleImage image) {
+    if (image != null && makeRoom(getSize(image))) {
+      greyscaleImages.addLast(image);
+      retainedBytes += getSize(image);
+    }
+  }
+
+  /**
+   * Returns a binary image to the pool. It must not be used by the caller any more.
+   *
+   * @param image BinaryImage; The image, or null.
+   */
+  public void release(BinaryImage image) {
+    if (image != null && makeRoom(getSize(image))) {
+      binaryImages.addLast(image);
+      retainedBytes += getSize(image);
+    }
+  }
+
+  /**
+   * Returns an int plane to the pool. It must not be used by the caller any more.
+   *
+   * @param plane int[]; The plane, or null.
+   */
+  public void release(int[] plane) {
+    if (plane != null && makeRoom(getSize(plane))) {
+      intPlanes.addLast(plane);
+      retainedBytes += getSize(plane);
+    }
+  }
+
+  /**
+   * Drops the free planes that have been in the pool the longest until a plane of the given size fits.
+   *
+   * @param size long; The number of bytes of the plane.
+   * @return boolean; Returns true if the plane fits, or false if it is larger than the pool.
+   */
+  private boolean makeRoom(long size) {
+    if (size > maxBytes) {
+      return false;
+    }
+    while (retainedBytes + size > maxBytes) {
+      if (!greyscaleImages.isEmpty()) {
+        retainedBytes -= getSize(greyscaleImages.removeFirst());
+      } else if (!intPlanes.isEmpty()) {
+        retainedBytes -= getSize(intPlanes.removeFirst());
+      } else {
+        retainedBytes -= getSize(binaryImages.removeFirst());
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes all free planes from the pool, e.g. before the images change size. The counters are kept.
+   */
+  public void clear() {
+    greyscaleImages.clear();
+    binaryImages.clear();
+    intPlanes.clear();
+    retainedBytes = 0;
+  }
+
+  private static long getSize(GreyscaleImage image) {
+    return (long) image.getWidth() * image.getHeight();
+  }
+
+  private static long getSize(BinaryImage image) {
+    return (long) image.getWordsPerRow() * image.getHeight() * Long.BYTES;
+  }
+
+  private static long getSize(int[] plane) {
+    return (long) plane.length * Integer.BYTES;
+  }
+
+  /**
+   * Gets the number of planes that were taken from the pool instead of being allocated.
+   *
+   * @return long; Returns the number of hits.
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of planes that were allocated because the pool had none of the size.
+   *
+   * @return long; Returns the number of allocations.
+   */
+  public long getAllocations() {
+    return allocations;
+  }
+
+  public long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+}
@@ -0,0 +1,926 @@
+import java.util.Arrays;
+
+/**
+ * The image processing pipeline that counts the number of cells in an 8 bit greyscale image of cells. Every pipeline
+ * instance holds its own image and intermediate images, so several images can be processed concurrently without any
+ * shared mutable state.
+ */
+public class CellCountPipeline {
+  private static final int FILTER_WIDTH = 3;
+  private static final int FILTER_HEIGHT = 3;
+  private static final int FILTER_SIZE = FILTER_WIDTH * FILTER_HEIGHT;
+  private static final int MIN_INTENSITY = 0;
+  private static final int MAX_INTENSITY = 255;
+  private static final int BACKGROUND_INTENSITY = MAX_INTENSITY;
+  private static final int FOREGROUND_INTENSITY = MIN_INTENSITY;
+  static final int TOTAL_PIXELS = 256;
+  /**
+   * The vectorized kernels if the Java Vector API is available, otherwise null and the scalar kernels are used.
+   */
+  static final SimdKernels SIMD_KERNELS = SimdKernels.load();
+  private GreyscaleImage image;
+  private BinaryImage binaryImage;
+  private final int imageWidth;
+  private final int imageHeight;
+  private final StageListener listener;
+  private StripExecutor stripExecutor = StripExecutor.sequential();
+  private borderModes borderMode = borderModes.CONSTANT;
+  private final CoordinateStack fillStack = new CoordinateStack();
+  private BufferPool bufferPool = new BufferPool();
+  private PipelineMetrics.Recorder metricsRecorder;
+
+  enum structuringElements {N4, N8, N20}
+
+  enum edgeDetectionFilters {LAPLACE, COMBINED_SOBEL, KIRSCH}
+
+  enum smoothingFilters {BOX, GAUSSIAN}
+
+  enum gradientMagnitudes {EXACT, L1, MAX_ABS}
+
+  enum borderModes {CONSTANT, REPLICATE, REFLECT}
+
+  /**
+   * A listener that is notified with the image after each operation in the image processing pipeline, for example to
+   * display it.
+   */
+  interface StageListener {
+    /**
+     * Called after an operation in the image processing pipeline has been performed.
+     *
+     * @param label String; Label for the operation in the image processing pipeline.
+     * @param image GreyscaleImage; The image after the operation. It must not be modified by the listener, and it is
+     *              only valid during the call, as the pipeline reuses its planes for the following operations.
+     */
+    void stageCompleted(String label, GreyscaleImage image);
+  }
+
+  /**
+   * Constructor for the CellCountPipeline class for an image that is processed headless.
+   *
+   * @param image GreyscaleImage; The 8 bit greyscale image of cells that is to be processed. It is owned by the
+   *              pipeline from now on.
+   */
+  CellCountPipeline(GreyscaleImage image) {
+    this(image, null);
+  }
+
+  /**
+   * Constructor for the CellCountPipeline class. The pipeline only holds its own image state, so any number of
+   * pipelines can process different images at the same time.
+   *
+   * @param image    GreyscaleImage; The 8 bit greyscale image of cells that is to be processed. It is owned by the
+   *                 pipeline from now on.
+   * @param listener StageListener; The listener that is notified after each operation, or null if there is none.
+   */
+  CellCountPipeline(GreyscaleImage image, StageListener listener) {
+    this.image = image;
+    this.imageWidth = image.getWidth();
+    this.imageHeight = image.getHeight();
+    this.listener = listener;
+  }
+
+  /**
+   * Gets the image in its current state in the image processing pipeline.
+   *
+   * @return GreyscaleImage; Returns the current image, which must not be modified.
+   */
+  GreyscaleImage getImage() {
+    unpackBinaryImage();
+    return image;
+  }
+
+  /**
+   * Sets the executor that applies the neighbourhood operations, which decides how many threads process the strips of
+   * a single image. By default the operations run sequentially on the calling thread.
+   *
+   * @param stripExecutor StripExecutor; The executor for the neighbourhood operations.
+   */
+  void setStripExecutor(StripExecutor stripExecutor) {
+    this.stripExecutor = stripExecutor;
+  }
+
+  /**
+   * Sets the pool that the operations take their intermediate planes from and return the replaced planes to. By
+   * default every pipeline has its own pool, so the operations ping-pong between the same planes; a pool that is
+   * shared by the pipelines that run one after another on the same thread reuses the planes across images as well.
+   *
+   * @param bufferPool BufferPool; The pool of the planes, which is only used by one thread at a time.
+   */
+  void setBufferPool(BufferPool bufferPool) {
+    this.bufferPool = bufferPool;
+  }
+
+  /**
+   * Records the wall time, the throughput and the allocated bytes of every following operation in the metrics, which
+   * are added to the metrics of the run when countCells has finished.
+   *
+   * @param metrics   PipelineMetrics; The metrics of the run.
+   * @param imageName String; The name of the image in the metrics, e.g. its file name.
+   */
+  void setMetrics(PipelineMetrics metrics, String imageName) {
+    this.metricsRecorder = metrics.startImage(imageName, imageWidth, imageHeight);
+  }
+
+  /**
+   * Sets how the 3x3 linear filters fill the pixels outside the image: CONSTANT counts them as 0, REPLICATE repeats the
+   * border pixels and REFLECT mirrors the image about the border pixels. It is CONSTANT by default. The operations
+   * applied one by one and the fused preprocessing of countCells use the same mode. The weighted median filter leaves
+   * the pixels outside the image out instead.
+   *
+   * @param borderMode borderModes (enum); The border mode of the linear filters.
+   */
+  void setBorderMode(borderModes borderMode) {
+    this.borderMode = borderMode;
+  }
+
+  /**
+   * Performs the image processing operations as a pipeline, from the weighted median filter to the region labeling,
+   * to count the number of cells in the image.
+   *
+   * @return int; Returns the number of distinct cells found in the image.
+   */
+  int countCells() {
+    if (metricsRecorder != null) {
+      metricsRecorder.startStage();
+    }
+    if (listener == null) {
+      // Nobody looks at the intermediate images, so the preprocessing runs fused with the same result.
+      applyFusedPreprocessing(0.65, 0.01, 65);
+    } else {
+      applyWeightedMedianFilter();
+      applySmoothing(smoothingFilters.GAUSSIAN);
+//      applySmoothing(smoothingFilters.GAUSSIAN);
+      applyModifiedAutoContrast(0.65, 0.01);
+      applyEdgeDetection(edgeDetectionFilters.COMBINED_SOBEL);
+//      applySharpening(2);
+      applyWeightedMedianFilter();
+      createBinaryImage(65);
+    }
+    applyClosing(structuringElements.N4);
+    applyClosing(structuringElements.N8);
+    applyClosing(structuringElements.N20);
+    applyClosing(structuringElements.N20);
+    applyOpening(structuringElements.N4);
+    applyOpening(structuringElements.N8);
+
+    int count = regionLabeling(92);
+    if (metricsRecorder != null) {
+      metricsRecorder.finish(count);
+    }
+    return count;
+  }
+
+  /**
+   * Applies the weighted median filter, the gaussian blur, the modified auto contrast, the combined sobel filters, the
+   * weighted median filter and the threshold in two fused passes over the rows of the image, split at the histogram
+   * that the modified auto contrast needs. No image is passed to the listener in between. The operations are recorded
+   * in the metrics one by one under the same names as when they are applied one by one, sharing the wall time of the
+   * passes in proportion to the time the rows spent in each of them.
+   *
+   * @param sLow      double; The percentage value of the darkest pixels to be clipped.
+   * @param sHigh     double; The percentage value of the brightest pixels to be clipped.
+   * @param threshold int; The threshold value at and above which the pixels become the foreground.
+   */
+  void applyFusedPreprocessing(double sLow, double sHigh, int threshold) {
+    unpackBinaryImage();
+    long[] stageNanos = metricsRecorder == null ? null : new long[RowStages.FUSED_STAGES.length];
+    binaryImage = FusedPreprocessor.apply(image, stripExecutor, bufferPool, borderMode, sLow, sHigh, threshold,
+      stageNanos);
+    if (metricsRecorder != null) {
+      metricsRecorder.endStages(RowStages.FUSED_STAGES, stageNanos);
+    }
+    addImage("Image after threshold");
+    if (metricsRecorder != null) {
+      metricsRecorder.startStage();
+    }
+  }
+
+  /**
+   * Ends an operation in the image processing pipeline, recording it in the metrics if there are any, and notifies the
+   * listener with the image after the operation.
+   *
+   * @param stage String; The name of the operation, which is also used in the label of the image.
+   */
+  private void completeStage(String stage) {
+    completeStage(stage, "Image after " + stage);
+  }
+
+  /**
+   * Ends an operation in the image processing pipeline, recording it in the metrics if there are any, and notifies the
+   * listener with the image after the operation. The time the listener takes is not part of any operation.
+   *
+   * @param stage String; The name of the operation in the metrics.
+   * @param label String; Label for the operation that is passed to the listener.
+   */
+  private void completeStage(String stage, String label) {
+    if (metricsRecorder != null) {
+      metricsRecorder.endStage(stage);
+    }
+    addImage(label);
+    if (metricsRecorder != null) {
+      metricsRecorder.startStage();
+    }
+  }
+
+  /**
+   * Notifies the listener, if there is one, with the current image after an operation in the image processing pipeline.
+   *
+   * @param label String. Label for the operation in the image processing pipeline.
+   */
+  void addImage(String label) {
+    if (listener != null) {
+      unpackBinaryImage();
+      listener.stageCompleted(label, image);
+    }
+  }
+
+  /**
+   * Creates an array for a histogram showing the number of pixels in the available range of intensities.
+   *
+   * @param bins int; Set the size of the histogram to the given bin.
+   * @return int[]; Returns an integer array which consists of the number of pixels in the available range of
+   * intensities or as per the size after binning.
+   */
+  int[] createHistogram(int bins) {
+    unpackBinaryImage();
+    int[] histogramArray = new int[bins];
+    for (int y = 0; y < imageHeight; y++) {
+      for (int x = 0; x < imageWidth; x++) {
+        int intensity = getIntensity(x, y);
+        int bin = intensity * bins / TOTAL_PIXELS;
+        histogramArray[bin] += 1;
+      }
+    }
+    return histogramArray;
+  }
+
+  /**
+   * Applies a non linear filter by adding multiple copies of each pixel value according to the weight. It helps to
+   * reduce the noise by eliminating the outliers i.e. extreme dark or bright pixels that might influence other
+   * filter's result.
+   */
+  void applyWeightedMedianFilter() {
+    applyWeightedMedianFilter(1);
+  }
+
+  /**
+   * Applies the weighted median filter with a neighbourhood of the given radius, where the weight of each pixel
+   * decreases with its distance from the centre of the neighbourhood.
+   *
+   * @param radius int; The radius of the neighbourhood, 1 for the 3x3 weighted median filter, 2 for 5x5 and so on.
+   */
+  void applyWeightedMedianFilter(int radius) {
+    applyNeighbourhoodOperation(new WeightedMedianFilter(radius));
+    completeStage("weighted median");
+  }
+
+  /**
+   * Modified auto contrast is a point of operation that modifies the pixels so that they cover the available range of
+   * intensities completely while clipping the outliers i.e is the brightest or the darkest pixels.
+   *
+   * @param sLow  double; The percentage value of the darkest pixels to be clipped.
+   * @param sHigh double; The percentage value of the brightest pixels to be clipped.
+   */
+  void applyModifiedAutoContrast(double sLow, double sHigh) {
+    unpackBinaryImage();
+    long[] histogramArray = Arrays.stream(createHistogram(TOTAL_PIXELS)).asLongStream().toArray();
+    int[] limits = findAutoContrastLimits(createCumulativeHistogram(histogramArray), (long) imageWidth * imageHeight,
+      sLow, sHigh);
+    applyModifiedAutoContrast(limits[0], limits[1]);
+  }
+
+  /**
+   * Applies the modified auto contrast with limits that have already been found, e.g. from the histogram of a whole
+   * slide of which this image is a tile.
+   *
+   * @param aHatLow  int; The intensity at and below which the pixels become black.
+   * @param aHatHigh int; The intensity at and above which the pixels become white.
+   */
+  void applyModifiedAutoContrast(int aHatLow, int aHatHigh) {
+    applyPointOperation(LookupTable.autoContrast(aHatLow, aHatHigh));
+    completeStage("modified auto contrast");
+  }
+
+  /**
+   * Applies a point operation to every pixel with one table lookup, processing the strips of the image in parallel.
+   * Consecutive point operations can be composed with LookupTable.andThen, so they cost a single pass over the image.
+   *
+   * @param table LookupTable; The point operation that is to be applied.
+   */
+  void applyPointOperation(LookupTable table) {
+    unpackBinaryImage();
+    byte[] pixels = image.getPixels();
+    stripExecutor.forEachStrip(stripExecutor.getStrips(imageHeight),
+      (strip, fromRow, toRow) -> table.apply(pixels, fromRow * imageWidth, toRow * imageWidth));
+  }
+
+  /**
+   * Finds the intensities aHatLow and aHatHigh of the modified auto contrast, below and above which the given
+   * percentages of the darkest and the brightest pixels lie.
+   *
+   * @param cumulativeHistogramArray long[]; The cumulative histogram of the image.
+   * @param imageSize                long; The number of pixels of the image.
+   * @param sLow                     double; The percentage value of the darkest pixels to be clipped.
+   * @param sHigh                    double; The percentage value of the brightest pixels to be clipped.
+   * @return int[]; Returns aHatLow and aHatHigh.
+   */
+  static int[] findAutoContrastLimits(long[] cumulativeHistogramArray, long imageSize, double sLow, double sHigh) {
+    int aHatLow = MIN_INTENSITY;
+    int aHatHigh = MAX_INTENSITY;
+    boolean isAHatHighSet = false;
+    boolean isAHatLowSet = false;
+
+    for (int i = 0; i < cumulativeHistogramArray.length; i++) {
+      if (!isAHatLowSet && cumulativeHistogramArray[i] >= imageSize * sLow) {
+        aHatLow = i;
+        isAHatLowSet = true;
+      }
+      if (!isAHatHighSet && cumulativeHistogramArray[MAX_INTENSITY - i] <= imageSize * (1 - sHigh)) {
+        aHatHigh = MAX_INTENSITY - i;
+        isAHatHighSet = true;
+      }
+      if (isAHatLowSet && isAHatHighSet) {
+        break;
+      }
+    }
+    return new int[]{aHatLow, aHatHigh};
+  }
+
+  /**
+   * Creates an array for a cumulative histogram, which is a non decreasing histogram.
+   *
+   * @param histogramArray long array; The histogram array for which the cumulative histogram array is to be created.
+   * @return long[]; Returns an array which consists of the cumulative number of pixels in the available range of
+   * intensities.
+   */
+  static long[] createCumulativeHistogram(long[] histogramArray) {
+    long[] cumulativeHistogramArray = new long[histogramArray.length];
+    for (int i = 0; i < histogramArray.length; i++) {
+      if (i == 0) {
+        cumulativeHistogramArray[i] = histogramArray[i];
+      } else {
+        cumulativeHistogramArray[i] = histogramArray[i] + cumulativeHistogramArray[i - 1];
+      }
+    }
+    return cumulativeHistogramArray;
+  }
+
+  /**
+   * Applies the specified smoothing filter.
+   *
+   * @param sf smoothingFilters (enum); Specifies which smoothing filter is to be applied as available in the smoothing
+   *           filters enum.
+   */
+  void applySmoothing(smoothingFilters sf) {
+    switch (sf) {
+      case BOX:
+        applyBoxBlur();
+        break;
+      case GAUSSIAN:
+        applyGaussianBlur();
+        break;
+    }
+  }
+
+  /**
+   * Applies the box blur linear filter which is the uniform weighted sum of the pixels in the original pixel's
+   * neighbourhood. It makes the image appear fuzzy or blurry.
+   */
+  private void applyBoxBlur() {
+    int[][] BOX_BLUR_FILTER = new int[FILTER_WIDTH][FILTER_HEIGHT];
+    for (int y = 0; y < FILTER_HEIGHT; y++) {
+      for (int x = 0; x < FILTER_WIDTH; x++) {
+        BOX_BLUR_FILTER[x][y] = 1;
+      }
+    }
+
+    applyNeighbourhoodOperation(createSmoothingFilter(FILTER_SIZE, BOX_BLUR_FILTER, borderMode));
+    completeStage("box blur");
+  }
+
+  /**
+   * Applies the gaussian blur linear filter which uses approximation of the normal distribution instead of uniform
+   * smoothing. It makes the image less fuzzy than the box blur.
+   */
+  private void applyGaussianBlur() {
+    applyNeighbourhoodOperation(createGaussianBlurFilter(borderMode));
+    completeStage("gaussian blur");
+  }
+
+  /**
+   * Creates the 3x3 gaussian blur filter with the weights 3 5 3, 5 8 5, 3 5 3 divided by 40.
+   *
+   * @param borderMode borderModes (enum); How the pixels outside the image are filled.
+   * @return PaddedRowFilter; Returns the gaussian blur filter.
+   */
+  static PaddedRowFilter createGaussianBlurFilter(borderModes borderMode) {
+    final int WEIGHT_SIZE = 40;
+    final int[][] GAUSSIAN_BLUR_FILTER = new int[FILTER_WIDTH][FILTER_HEIGHT];
+    GAUSSIAN_BLUR_FILTER[0][0] = 3;
+    GAUSSIAN_BLUR_FILTER[0][1] = 5;
+    GAUSSIAN_BLUR_FILTER[0][2] = 3;
+    GAUSSIAN_BLUR_FILTER[1][0] = 5;
+    GAUSSIAN_BLUR_FILTER[1][1] = 8;
+    GAUSSIAN_BLUR_FILTER[1][2] = 5;
+    GAUSSIAN_BLUR_FILTER[2][0] = 3;
+    GAUSSIAN_BLUR_FILTER[2][1] = 5;
+    GAUSSIAN_BLUR_FILTER[2][2] = 3;
+
+    return createSmoothingFilter(WEIGHT_SIZE, GAUSSIAN_BLUR_FILTER, borderMode);
+  }
+
+  /**
+   * Applies a box blur of the given radius as a separable filter with running sums, so that a larger box costs no more
+   * per pixel than a 3x3 box. Unlike the 3x3 box blur, pixels outside the image take the value of the nearest pixel on
+   * the border and the result is rounded instead of truncated.
+   *
+   * @param radius int; The radius of the box, 1 for 3x3, 2 for 5x5 and so on.
+   */
+  void applyBoxBlur(int radius) {
+    applyNeighbourhoodOperation(new BoxBlur(radius));
+    completeStage("box blur (radius " + radius + ")");
+  }
+
+  /**
+   * Applies a gaussian blur of the given standard deviation as three box blurs with running sums, so that stronger
+   * smoothing costs no more per pixel than weak smoothing.
+   *
+   * @param sigma double; The standard deviation of the gaussian in pixels.
+   */
+  void applyGaussianBlur(double sigma) {
+    for (BoxBlur boxBlur : BoxBlur.approximateGaussian(sigma)) {
+      applyNeighbourhoodOperation(boxBlur);
+    }
+    completeStage("gaussian blur (sigma " + sigma + ")");
+  }
+
+  /**
+   * Creates the smoothing filter, which is applied to an intermediate image that is then copied to the original image
+   * as linear filters cannot be applied in place as the pixel values depends upon the neighbouring pixel values.
+   *
+   * @param weight     int; THe weight of the filter. It determines what the filter does.
+   * @param filter     2D integer array (int[][]); The filter that is to be used for convolution which smooths the
+   *                   image.
+   * @param borderMode borderModes (enum); How the pixels outside the image are filled.
+   * @return PaddedRowFilter; Returns the smoothing filter.
+   */
+  private static PaddedRowFilter createSmoothingFilter(int weight, int[][] filter, borderModes borderMode) {
+    if (SIMD_KERNELS != null) {
+      PaddedRowFilter vectorized = SIMD_KERNELS.createSmoothingFilter(weight, filter, borderMode);
+      if (vectorized != null) {
+        return vectorized;
+      }
+    }
+
+    // Only the taps with a non zero weight are applied, as X offset, Y offset and weight.
+    int[][] taps = getNonZeroTaps(filter);
+    return new PaddedRowFilter(borderMode) {
+      @Override
+      void computeRow(int[] above, int[] centre, int[] below, int[] output, int width) {
+        for (int x = 0; x < width; x++) {
+          int total = 0;
+          for (int[] tap : taps) {
+            int[] row = tap[1] < 0 ? above : tap[1] == 0 ? centre : below;
+            total += row[x + 1 + tap[0]] * tap[2];
+          }
+          output[x] = applyClamping(total / weight);
+        }
+      }
+    };
+  }
+
+  /**
+   * Gets the taps of a 3x3 filter whose weight is not zero.
+   *
+   * @param filter int[][]; The filter, where filter[1 + i][1 + j] is the weight of pixel (x + i, y + j).
+   * @return int[][]; Returns the X offset, the Y offset and the weight of every tap.
+   */
+  private static int[][] getNonZeroTaps(int[][] filter) {
+    int count = 0;
+    for (int[] column : filter) {
+      for (int w : column) {
+        count += w != 0 ? 1 : 0;
+      }
+    }
+    int[][] taps = new int[count][];
+    int tap = 0;
+    for (int j = -1; j <= 1; j++) {
+      for (int i = -1; i <= 1; i++) {
+        if (filter[1 + i][1 + j] != 0) {
+          taps[tap++] = new int[]{i, j, filter[1 + i][1 + j]};
+        }
+      }
+    }
+    return taps;
+  }
+
+  /**
+   * Applies a neighbourhood operation to the whole image using the strip executor and replaces the original image with
+   * the result. The result is written to a back plane from the buffer pool, and the original image goes back to the
+   * pool once it has been replaced, so consecutive operations swap the same two planes.
+   *
+   * @param operation NeighbourhoodOperation; The operation that computes a range of rows of the intermediate image.
+   */
+  private void applyNeighbourhoodOperation(NeighbourhoodOperation operation) {
+    unpackBinaryImage();
+    GreyscaleImage intermediateImage = bufferPool.acquireGreyscaleImage(imageWidth, imageHeight);
+    stripExecutor.execute(operation, image, intermediateImage);
+    GreyscaleImage originalImage = image;
+    copyIntermediateToOriginalImage(intermediateImage);
+    bufferPool.release(originalImage);
+  }
+
+  /**
+   * A method to replace the original image with the intermediate image, after applying the linear or non liner filter
+   * to the intermediate image. The intermediate image is not copied as it is not used after this call.
+   *
+   * @param intermediateImage GreyscaleImage; The intermediate image that is to replace the original image.
+   */
+  private void copyIntermediateToOriginalImage(GreyscaleImage intermediateImage) {
+    image = intermediateImage;
+  }
+
+  /**
+   * Gets the intensity value of the 8 bit greyscale image;
+   *
+   * @param x int; X coordinate of the image.
+   * @param y int; X coordinate of the image.
+   * @return int; Returns the integer intensity value of the greyscale image.
+   */
+  private int getIntensity(int x, int y) {
+    return image.getIntensity(x, y);
+  }
+
+  /**
+   * This method enhances the edges of fuzzy or blurry image by subtraction a fraction of the second order derivative
+   * from the original image.
+   *
+   * @param weight int; The weight to be applied for sharpening the image.
+   */
+  void applySharpening(int weight) {
+    applyNeighbourhoodOperation(new PaddedRowFilter(borderMode) {
+      @Override
+      void computeRow(int[] above, int[] centre, int[] below, int[] output, int width) {
+        for (int x = 0; x < width; x++) {
+          int intensity = centre[x + 1];
+          int total = above[x + 1] + centre[x] + centre[x + 2] + below[x + 1] - 4 * intensity;
+          output[x] = applyClamping(intensity - (total / weight));
+        }
+      }
+    });
+    completeStage("sharpening");
+  }
+
+  /**
+   * This method checks if the pixel value exceed the range of intensity and sets it within the peak of the top or
+   * bottom of the range  that is which ever is the closest.
+   *
+   * @param intensity int; The intensity value of the pixel.
+   * @return int; Returns the pixel value after checking if it exceeds the range of intensity and sets it within the
+   * peak of the top or bottom of the range if the value exceeds the range.
+   */
+  private static int applyClamping(int intensity) {
+    // The results of the filters reach beyond the 256 intensities of a lookup table, so min and max are used, which
+    // compile to conditional moves instead of branches.
+    return Math.min(MAX_INTENSITY, Math.max(MIN_INTENSITY, intensity));
+  }
+
+  /**
+   * Applies the specified edge detection filter as specified in the argument.
+   *
+   * @param edf edgeDetectionFilters (enum); Specifies which edge detection filter is to be applied as available in the
+   *            edge detection filters enum.
+   */
+  void applyEdgeDetection(edgeDetectionFilters edf) {
+    applyEdgeDetection(edf, gradientMagnitudes.EXACT);
+  }
+
+  /**
+   * Applies the specified edge detection filter, computing the gradient magnitude of the combined Sobel filters
+   * exactly or with a cheaper approximation.
+   *
+   * @param edf       edgeDetectionFilters (enum); Specifies which edge detection filter is to be applied.
+   * @param magnitude gradientMagnitudes (enum); How the gradient magnitude of the combined Sobel filters is computed.
+   *                  It is ignored by the other filters.
+   */
+  void applyEdgeDetection(edgeDetectionFilters edf, gradientMagnitudes magnitude) {
+    switch (edf) {
+      case COMBINED_SOBEL:
+        applyCombinedSobelFilters(magnitude);
+        break;
+      case KIRSCH:
+        applyKirschFilters();
+        break;
+      case LAPLACE:
+        applyLaplaceFilter();
+    }
+  }
+
+  /**
+   * This filter helps to detect the edge by estimating the gradient magnitude of the edge using the Sobel horizontal
+   * partial derivative filter (Sobel X) and Sobel vertical partial derivative filter (Sobel Y).
+   *
+   * @param magnitude gradientMagnitudes (enum); How the gradient magnitude is computed.
+   */
+  private void applyCombinedSobelFilters(gradientMagnitudes magnitude) {
+    applyNeighbourhoodOperation(createCombinedSobelFilters(borderMode, magnitude));
+    completeStage("combined Sobel filters");
+  }
+
+  /**
+   * Creates the combined Sobel filters.
+   *
+   * @param borderMode borderModes (enum); How the pixels outside the image are filled.
+   * @param magnitude  gradientMagnitudes (enum); How the gradient magnitude is computed.
+   * @return PaddedRowFilter; Returns the combined Sobel filters.
+   */
+  static PaddedRowFilter createCombinedSobelFilters(borderModes borderMode, gradientMagnitudes magnitude) {
+    if (SIMD_KERNELS != null && magnitude == gradientMagnitudes.EXACT) {
+      return SIMD_KERNELS.createCombinedSobelFilters(borderMode);
+    }
+    return EdgeFilters.createCombinedSobelFilters(borderMode, magnitude);
+  }
+
+  /**
+   * This filter helps to detect not only the vertical and horizontal edges but also the edges at 45 degree angle. It
+   * uses eight different filters but some of the filters produce the same result as others with the result differing
+   * only in sign, so we can reduce the number of filters to just four. The gradient magnitude is the output of the
+   * filter that gives the maximum value compared to other filters.
+   */
+  private void applyKirschFilters() {
+    applyNeighbourhoodOperation(EdgeFilters.createKirschFilters(borderMode));
+    completeStage("Kirsch filters");
+  }
+
+  /**
+   * The Laplace filter can also be used to detect the edges. The Laplace filter smooths out the intensity changes where
+   * there are positive coefficients and the filter reacts strongly to the intensity changes where thare are negative
+   * coefficients.
+   */
+  private void applyLaplaceFilter() {
+    applyNeighbourhoodOperation(createLaplaceFilter(borderMode));
+    completeStage("Laplace filter");
+  }
+
+  /**
+   * Creates the Laplace filter, which is 8 times the pixel minus its 8 neighbours.
+   *
+   * @param borderMode borderModes (enum); How the pixels outside the image are filled.
+   * @return PaddedRowFilter; Returns the Laplace filter.
+   */
+  static PaddedRowFilter createLaplaceFilter(borderModes borderMode) {
+    if (SIMD_KERNELS != null) {
+      return SIMD_KERNELS.createLaplaceFilter(borderMode);
+    }
+    return EdgeFilters.createLaplaceFilter(borderMode);
+  }
+
+  /**
+   * This method creates a binary image by thresholding where the background pixel is changed into white and the
+   * foreground pixel is changed into black.
+   *
+   * @param threshold int;
+   */
+  void createBinaryImage(int threshold) {
+    applyPointOperation(LookupTable.threshold(threshold, BACKGROUND_INTENSITY, FOREGROUND_INTENSITY));
+    completeStage("threshold");
+  }
+
+  /**
+   * In opening, erosion (shrinking) is followed by dialation (growing) of the blobs. It helps to eliminate the small
+   * structures and grow the remaining structure.
+   *
+   * @param n structuringElements (enum); It is a pixel neighbourhood of different sizes as available in the
+   *          structuringElements enum which is used for shrinking or growing;
+   */
+  void applyOpening(structuringElements n) {
+    applyMorphing(getStructuringElement(n), MAX_INTENSITY, MIN_INTENSITY);
+    completeStage("opening (" + n + ")");
+  }
+
+  /**
+   * Applies an opening with a structuring element of any shape and size, e.g. a larger disk for the bigger cells of
+   * images taken at a higher magnification.
+   *
+   * @param element StructuringElement; The structuring element which is used for shrinking and growing.
+   */
+  void applyOpening(StructuringElement element) {
+    applyMorphing(element, MAX_INTENSITY, MIN_INTENSITY);
+    completeStage("opening (" + element + ")");
+  }
+
+  /**
+   * In closing, dialation (growing) is followed by erosion (shrinking) of the blobs. It helps to eliminate the small
+   * holes and fissures in the foreground.
+   *
+   * @param n structuringElements (enum); It is a pixel neighbourhood of different sizes as available in the
+   *          structuringElements enum which is used for shrinking or growing;
+   */
+  void applyClosing(structuringElements n) {
+    applyMorphing(getStructuringElement(n), MIN_INTENSITY, MAX_INTENSITY);
+    completeStage("closing (" + n + ")");
+  }
+
+  /**
+   * Applies a closing with a structuring element of any shape and size.
+   *
+   * @param element StructuringElement; The structuring element which is used for growing and shrinking.
+   */
+  void applyClosing(StructuringElement element) {
+    applyMorphing(element, MIN_INTENSITY, MAX_INTENSITY);
+    completeStage("closing (" + element + ")");
+  }
+
+  /**
+   * Gets the structuring element of a pixel neighbourhood: the 4-neighbourhood is a diamond of radius 1, the
+   * 8-neighbourhood a 3x3 square and the 20-neighbourhood a 5x5 square without its corners, which is a disk of radius
+   * sqrt(5).
+   *
+   * @param n structuringElements (enum); The pixel neighbourhood as available in the structuringElements enum.
+   * @return StructuringElement; Returns the structuring element of the neighbourhood.
+   */
+  private static StructuringElement getStructuringElement(structuringElements n) {
+    switch (n) {
+      case N4:
+        return StructuringElement.diamond(1);
+      case N8:
+        return StructuringElement.square(1);
+      default:
+        return StructuringElement.disk(Math.sqrt(5));
+    }
+  }
+
+  /**
+   * This method applies the morphing operations to the binary image, where the pixels are either the foreground or the
+   * background intensity. The image is kept bit-packed between consecutive morphing operations, so that 64 pixels are
+   * processed at once.
+   *
+   * @param element StructuringElement; The structuring element which is used for shrinking or growing.
+   * @param start   int; The integer value which is the value of the background or foreground that decides whether
+   *                erosion or dialation is to be performed first.
+   * @param end     int; The integer value which is the value of the background or foreground that decides whether
+   *                erosion or dialation is to be performed after performing the dialation or erosion operation.
+   */
+  private void applyMorphing(StructuringElement element, int start, int end) {
+    BinaryImage sourceImage = getBinaryImage();
+    BinaryImage intermediateImage1 = bufferPool.acquireBinaryImage(imageWidth, imageHeight);
+    BinaryImage intermediateImage2 = bufferPool.acquireBinaryImage(imageWidth, imageHeight);
+    if (start == FOREGROUND_INTENSITY) {
+      BinaryMorphology.dilate(sourceImage, intermediateImage1, element, bufferPool);
+      BinaryMorphology.erode(intermediateImage1, intermediateImage2, element, bufferPool);
+    } else {
+      BinaryMorphology.erode(sourceImage, intermediateImage1, element, bufferPool);
+      BinaryMorphology.dilate(intermediateImage1, intermediateImage2, element, bufferPool);
+    }
+    bufferPool.release(sourceImage);
+    bufferPool.release(intermediateImage1);
+    binaryImage = intermediateImage2;
+  }
+
+  /**
+   * Gets the bit-packed binary image of the foreground pixels, which the morphing operations work on, creating it from
+   * the greyscale image if the previous operation was not a morphing operation. The greyscale image is kept, as it is
+   * overwritten when the binary image is unpacked again.
+   *
+   * @return BinaryImage; Returns the binary image where the foreground pixels are set.
+   */
+  private BinaryImage getBinaryImage() {
+    if (binaryImage == null) {
+      binaryImage = BinaryImage.fromGreyscaleImage(image, FOREGROUND_INTENSITY,
+        bufferPool.acquireBinaryImage(imageWidth, imageHeight));
+    }
+    return binaryImage;
+  }
+
+  /**
+   * Updates the greyscale image from the bit-packed binary image if the previous operation was a morphing operation,
+   * so that the consecutive morphing operations only convert the image once.
+   */
+  private void unpackBinaryImage() {
+    if (binaryImage != null) {
+      binaryImage.toGreyscaleImage(FOREGROUND_INTENSITY, BACKGROUND_INTENSITY, image);
+      bufferPool.release(binaryImage);
+      binaryImage = null;
+    }
+  }
+
+  /**
+   * Region labeling is used to label and identify the blobs or cells after detecting them. Then it is used to count the
+   * number of distinct cells it has identified. The 4-connected blobs are labeled in two passes with union-find, and
+   * the blobs that are smaller than the minimum size are removed in the same pass that relabels the pixels. The strips
+   * of the image are labeled in parallel by the strip executor and merged along their borders.
+   *
+   * @param minBlobSize int; The minimum size of the blob that is acceptable to be considered as a cell.
+   * @return int; Returns the number of distinct cells found in the image.
+   */
+  int regionLabeling(int minBlobSize) {
+    ConnectedComponentLabeler labeler = new ConnectedComponentLabeler(bufferPool);
+    int count = labeler.label(getBinaryImage(), minBlobSize, stripExecutor);
+
+    // The greyscale image is stale while the binary image is current, so the result overwrites it.
+    byte[] pixels = image.getPixels();
+    int[] labels = labeler.getLabels();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = (byte) (labels[i] != 0 ? FOREGROUND_INTENSITY : BACKGROUND_INTENSITY);
+    }
+    labeler.release();
+    bufferPool.release(binaryImage);
+    binaryImage = null;
+
+    completeStage("region labeling",
+      "Total cells found = " + count + ". Image after region labeling and removing small structures");
+    return count;
+  }
+
+  /**
+   * Fills the 4-connected blob that contains the given pixel, i.e. the pixels of the same intensity that are connected
+   * to it, with a new intensity. The blob is filled span by span: the run of the pixel is extended to the left and to
+   * the right along its row and filled at once, and only one pixel of every run of the blob found in the rows above and
+   * below the span is pushed onto the stack. The stack holds packed coordinates and is reused, so no objects are
+   * allocated per pixel. It can be used for interactive operations on a single blob, such as highlighting it.
+   *
+   * @param x         int; The X coordinate of a pixel of the blob.
+   * @param y         int; The Y coordinate of a pixel of the blob.
+   * @param intensity int; The intensity that the pixels of the blob are set to.
+   * @return int; Returns the number of pixels of the blob, or 0 if it already has the given intensity.
+   */
+  int floodFill(int x, int y, int intensity) {
+    unpackBinaryImage();
+    int blobIntensity = getIntensity(x, y);
+    if (blobIntensity == intensity) {
+      return 0;
+    }
+
+    int count = 0;
+    fillStack.clear();
+    fillStack.push(x, y);
+    while (!fillStack.isEmpty()) {
+      long coordinates = fillStack.pop();
+      int spanY = CoordinateStack.getY(coordinates);
+      int left = CoordinateStack.getX(coordinates);
+      if (getIntensity(left, spanY) != blobIntensity) {
+        // The pixel has been filled as part of another span since it was pushed.
+        continue;
+      }
+
+      int right = left;
+      while (left > 0 && getIntensity(left - 1, spanY) == blobIntensity) {
+        left--;
+      }
+      while (right < imageWidth - 1 && getIntensity(right + 1, spanY) == blobIntensity) {
+        right++;
+      }
+      for (int spanX = left; spanX <= right; spanX++) {
+        image.setIntensity(spanX, spanY, intensity);
+      }
+      count += right - left + 1;
+
+      if (spanY > 0) {
+        pushRuns(left, right, spanY - 1, blobIntensity);
+      }
+      if (spanY < imageHeight - 1) {
+        pushRuns(left, right, spanY + 1, blobIntensity);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Pushes the first pixel of every run of pixels with the intensity of the blob between the given X coordinates of a
+   * row onto the stack of the flood fill.
+   *
+   * @param left          int; The X coordinate of the first pixel of the span.
+   * @param right         int; The X coordinate of the last pixel of the span.
+   * @param y             int; The Y coordinate of the row.
+   * @param blobIntensity int; The intensity of the pixels of the blob that is being filled.
+   */
+  private void pushRuns(int left, int right, int y, int blobIntensity) {
+    boolean inRun = false;
+    for (int x = left; x <= right; x++) {
+      if (getIntensity(x, y) == blobIntensity) {
+        if (!inRun) {
+          fillStack.push(x, y);
+          inRun = true;
+        }
+      } else {
+        inRun = false;
+      }
+    }
+  }
+
+  /**
+   * Removes the blob that contains the given pixel from the binary image by filling it with the background intensity,
+   * e.g. to remove a structure that has been wrongly detected as a cell.
+   *
+   * @param x int; The X coordinate of a pixel of the blob that is to be removed.
+   * @param y int; The Y coordinate of a pixel of the blob that is to be removed.
+   * @return int; Returns the number of pixels that have been removed, or 0 if the pixel is not in a blob.
+   */
+  int removeBlob(int x, int y) {
+    unpackBinaryImage();
+    if (getIntensity(x, y) != FOREGROUND_INTENSITY) {
+      return 0;
+    }
+    return floodFill(x, y, BACKGROUND_INTENSITY);
+  }
+}
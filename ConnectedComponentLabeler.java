@@ -0,0 +1,353 @@
+import java.util.Arrays;
+
+/**
+ * Labels the 4-connected components of the set pixels of a binary image in two passes over a flat label plane.
+ * <p>
+ * The first pass visits the pixels row by row and gives every set pixel the provisional label of its left or upper
+ * neighbour, or a new one if neither is set. When both are set with different labels, the two labels are recorded as
+ * equivalent in a union-find forest. The area of every provisional label is counted along the way. The forest is
+ * then resolved into the final labels, numbered in the order in which the components are first met, and components
+ * smaller than the minimum area are mapped to the background, so the second pass relabels every pixel with a single
+ * table lookup. The cost is linear in the number of pixels and no memory is allocated per pixel or per component.
+ * <p>
+ * With a parallel strip executor the image is split into horizontal strips that are labeled independently. The
+ * components of neighbouring strips that touch across the border between them are then merged with a second
+ * union-find forest over the components of all strips, before the smaller components are removed, so the labels and
+ * areas are exactly those of labeling the whole image at once.
+ * <p>
+ * The label plane is taken from a BufferPool and is returned to it by release(), so the labelers of consecutive images
+ * of the same size reuse the same plane.
+ */
+public class ConnectedComponentLabeler {
+  private final BufferPool bufferPool;
+  private int[] labels;
+  private LabelTable[] stripTables = new LabelTable[0];
+  private final LabelTable table = new LabelTable();
+  private int width;
+  private int height;
+
+  /**
+   * Constructor for the ConnectedComponentLabeler class with a pool that keeps no planes, so the label plane is
+   * allocated for the first image.
+   */
+  public ConnectedComponentLabeler() {
+    this(new BufferPool(0));
+  }
+
+  /**
+   * Constructor for the ConnectedComponentLabeler class.
+   *
+   * @param bufferPool BufferPool; The pool that the label plane is taken from and returned to.
+   */
+  public ConnectedComponentLabeler(BufferPool bufferPool) {
+    this.bufferPool = bufferPool;
+  }
+
+  /**
+   * Labels the components of the set pixels of the image, leaving out the components whose area is smaller than the
+   * minimum area. The labeler can be reused for further images, keeping its buffers.
+   *
+   * @param image   BinaryImage; The image whose set pixels are to be labeled.
+   * @param minArea int; The minimum number of pixels of a component that is kept.
+   * @return int; Returns the number of components that are kept.
+   */
+  public int label(BinaryImage image, int minArea) {
+    return label(image, minArea, StripExecutor.sequential());
+  }
+
+  /**
+   * Labels the components of the set pixels of the image, labeling the strips of the image in parallel.
+   *
+   * @param image    BinaryImage; The image whose set pixels are to be labeled.
+   * @param minArea  int; The minimum number of pixels of a component that is kept.
+   * @param executor StripExecutor; The executor that splits the image into strips and labels them in parallel.
+   * @return int; Returns the number of components that are kept.
+   */
+  public int label(BinaryImage image, int minArea, StripExecutor executor) {
+    width = image.getWidth();
+    height = image.getHeight();
+    if (labels == null || labels.length < width * height) {
+      bufferPool.release(labels);
+      labels = bufferPool.acquireIntPlane(width * height);
+    }
+
+    int[] strips = executor.getStrips(height);
+    int stripCount = strips.length - 1;
+    if (stripCount == 1) {
+      int labelCount = labelStrip(image, table, 0, height);
+      table.resolve(labelCount, minArea);
+      relabel(table.finalLabels, 0, 0, height);
+      return table.componentCount;
+    }
+
+    if (stripTables.length < stripCount) {
+      stripTables = Arrays.copyOf(stripTables, stripCount);
+      for (int i = 0; i < stripCount; i++) {
+        if (stripTables[i] == null) {
+          stripTables[i] = new LabelTable();
+        }
+      }
+    }
+    executor.forEachStrip(strips, (strip, fromRow, toRow) -> {
+      LabelTable stripTable = stripTables[strip];
+      stripTable.resolve(labelStrip(image, stripTable, fromRow, toRow), 0);
+      relabel(stripTable.finalLabels, 0, fromRow, toRow);
+    });
+
+    // Component c of strip i becomes label bases[i] + c of the merged table, in the order of the strips.
+    int[] bases = new int[stripCount];
+    int labelCount = 1;
+    for (int i = 0; i < stripCount; i++) {
+      bases[i] = labelCount - 1;
+      labelCount += stripTables[i].componentCount;
+    }
+    table.reset(labelCount);
+    for (int i = 0; i < stripCount; i++) {
+      LabelTable stripTable = stripTables[i];
+      for (int component = 1; component <= stripTable.componentCount; component++) {
+        table.provisionalAreas[bases[i] + component] = stripTable.areas[component];
+      }
+    }
+    for (int i = 1; i < stripCount; i++) {
+      int lastRowOffset = (strips[i] - 1) * width;
+      int firstRowOffset = strips[i] * width;
+      for (int x = 0; x < width; x++) {
+        int above = labels[lastRowOffset + x];
+        int below = labels[firstRowOffset + x];
+        if (above != 0 && below != 0) {
+          table.union(bases[i - 1] + above, bases[i] + below);
+        }
+      }
+    }
+
+    // The smallest label of a component belongs to its first pixel, so the components keep the sequential order.
+    table.resolve(labelCount, minArea);
+    executor.forEachStrip(strips, (strip, fromRow, toRow) -> relabel(table.finalLabels, bases[strip], fromRow, toRow));
+    return table.componentCount;
+  }
+
+  /**
+   * The first pass over the rows of a strip, which gives every set pixel a provisional label and records the
+   * equivalent labels and the area of every label. The rows above the strip are ignored.
+   *
+   * @param image      BinaryImage; The image whose set pixels are to be labeled.
+   * @param labelTable LabelTable; The table of the provisional labels of the strip.
+   * @param fromRow    int; The first row of the strip.
+   * @param toRow      int; The row after the last row of the strip.
+   * @return int; Returns the number of provisional labels plus one, as label 0 is the background.
+   */
+  private int labelStrip(BinaryImage image, LabelTable labelTable, int fromRow, int toRow) {
+    long[] words = image.getWords();
+    int wordsPerRow = image.getWordsPerRow();
+    int next = 1;
+    for (int y = fromRow; y < toRow; y++) {
+      int rowOffset = y * width;
+      int wordOffset = y * wordsPerRow;
+      for (int x = 0; x < width; x++) {
+        int i = rowOffset + x;
+        if ((words[wordOffset + (x >>> 6)] & (1L << x)) == 0) {
+          labels[i] = 0;
+          continue;
+        }
+
+        int left = x > 0 ? labels[i - 1] : 0;
+        int up = y > fromRow ? labels[i - width] : 0;
+        int label;
+        if (left == 0 && up == 0) {
+          label = next++;
+          labelTable.add(label);
+        } else if (left == 0) {
+          label = up;
+        } else {
+          label = left;
+          if (up != 0 && up != left) {
+            labelTable.union(left, up);
+          }
+        }
+        labels[i] = label;
+        labelTable.provisionalAreas[label]++;
+      }
+    }
+    return next;
+  }
+
+  /**
+   * The second pass over the rows of a strip, which replaces the label of every set pixel by its final label.
+   *
+   * @param finalLabels int[]; The final label of every label.
+   * @param base        int; The offset that is added to the labels of the strip before they are looked up.
+   * @param fromRow     int; The first row of the strip.
+   * @param toRow       int; The row after the last row of the strip.
+   */
+  private void relabel(int[] finalLabels, int base, int fromRow, int toRow) {
+    for (int i = fromRow * width; i < toRow * width; i++) {
+      int label = labels[i];
+      if (label != 0) {
+        labels[i] = finalLabels[base + label];
+      }
+    }
+  }
+
+  /**
+   * Gets the label plane of the last labeled image, where pixel (x, y) is at index y * width + x. The pixels of the
+   * kept components are labeled from 1 to the number of components and all other pixels are 0.
+   *
+   * @return int[]; Returns the labels, which are not copied and are overwritten by the next image.
+   */
+  public int[] getLabels() {
+    return labels;
+  }
+
+  /**
+   * Returns the label plane to the buffer pool. The labels of the last labeled image must not be used any more, and
+   * the next image takes a plane from the pool again.
+   */
+  public void release() {
+    bufferPool.release(labels);
+    labels = null;
+  }
+
+  /**
+   * Gets the area of a kept component of the last labeled image.
+   *
+   * @param label int; The label of the component, from 1 to the number of components.
+   * @return int; Returns the number of pixels of the component.
+   */
+  public int getArea(int label) {
+    if (label < 1 || label > table.componentCount) {
+      throw new IllegalArgumentException("There is no component with label " + label);
+    }
+    return table.areas[label];
+  }
+
+  public int getComponentCount() {
+    return table.componentCount;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * The union-find forest of the equivalent labels, with the area of every label, and the final labels and areas of
+   * the components once it has been resolved.
+   */
+  private static class LabelTable {
+    private static final int INITIAL_CAPACITY = 256;
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] provisionalAreas = new int[INITIAL_CAPACITY];
+    private int[] finalLabels = new int[INITIAL_CAPACITY];
+    private int[] areas = new int[INITIAL_CAPACITY];
+    private int componentCount;
+
+    /**
+     * Adds a new label that is not yet equivalent to any other label and has no area.
+     *
+     * @param label int; The label, which is one more than the previous label.
+     */
+    private void add(int label) {
+      ensureCapacity(label + 1);
+      parents[label] = label;
+      provisionalAreas[label] = 0;
+    }
+
+    /**
+     * Removes all equivalences and areas and adds the labels from 1 up to the given count.
+     *
+     * @param labelCount int; The number of labels plus one, as label 0 is the background.
+     */
+    private void reset(int labelCount) {
+      ensureCapacity(labelCount);
+      for (int label = 1; label < labelCount; label++) {
+        parents[label] = label;
+        provisionalAreas[label] = 0;
+      }
+    }
+
+    /**
+     * Resolves the labels into the final labels, adding up the areas of the equivalent labels and mapping the
+     * components that are smaller than the minimum area to the background.
+     *
+     * @param labelCount int; The number of labels plus one.
+     * @param minArea    int; The minimum number of pixels of a component that is kept.
+     */
+    private void resolve(int labelCount, int minArea) {
+      for (int label = 1; label < labelCount; label++) {
+        int root = find(label);
+        if (root != label) {
+          provisionalAreas[root] += provisionalAreas[label];
+        }
+      }
+
+      // The root of a component is its smallest label, so it is resolved before the other labels of the component.
+      componentCount = 0;
+      finalLabels[0] = 0;
+      for (int label = 1; label < labelCount; label++) {
+        int root = parents[label];
+        if (root != label) {
+          finalLabels[label] = finalLabels[root];
+        } else if (provisionalAreas[label] >= minArea) {
+          componentCount++;
+          finalLabels[label] = componentCount;
+          areas[componentCount] = provisionalAreas[label];
+        } else {
+          finalLabels[label] = 0;
+        }
+      }
+    }
+
+    /**
+     * Finds the root of the tree of a label, pointing every label on the way directly at the root.
+     *
+     * @param label int; The label.
+     * @return int; Returns the smallest label that is equivalent to the label.
+     */
+    private int find(int label) {
+      int root = label;
+      while (parents[root] != root) {
+        root = parents[root];
+      }
+      while (parents[label] != root) {
+        int parent = parents[label];
+        parents[label] = root;
+        label = parent;
+      }
+      return root;
+    }
+
+    /**
+     * Records that two labels belong to the same component by attaching the tree with the larger root to the other.
+     *
+     * @param a int; The first label.
+     * @param b int; The second label.
+     */
+    private void union(int a, int b) {
+      int rootA = find(a);
+      int rootB = find(b);
+      if (rootA < rootB) {
+        parents[rootB] = rootA;
+      } else if (rootB < rootA) {
+        parents[rootA] = rootB;
+      }
+    }
+
+    /**
+     * Grows the tables so that they can hold at least the given number of labels.
+     *
+     * @param capacity int; The number of labels that are needed.
+     */
+    private void ensureCapacity(int capacity) {
+      if (capacity > parents.length) {
+        int length = Math.max(capacity, parents.length * 2);
+        parents = Arrays.copyOf(parents, length);
+        provisionalAreas = Arrays.copyOf(provisionalAreas, length);
+        finalLabels = Arrays.copyOf(finalLabels, length);
+        areas = Arrays.copyOf(areas, length);
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A stack of pixel coordinates in Last in First Out (LIFO) order that stores every coordinate pair packed into a
+ * single long of a growable array, so pushing and popping allocate no objects. The X coordinate is kept in the upper
+ * and the Y coordinate in the lower 32 bits. The array is kept when the stack is cleared, so a stack that is reused
+ * only allocates while it grows to the largest size it needs.
+ */
+public class CoordinateStack {
+  private static final int INITIAL_CAPACITY = 64;
+  private long[] coordinates = new long[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * Adds the x and y coordinate values of a pixel to the stack at the top.
+   *
+   * @param x int; X coordinate of the pixel.
+   * @param y int; Y coordinate of the pixel.
+   */
+  public void push(int x, int y) {
+    if (size == coordinates.length) {
+      coordinates = Arrays.copyOf(coordinates, size * 2);
+    }
+    coordinates[size++] = ((long) x << 32) | (y & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Removes the coordinates at the top of the stack.
+   *
+   * @return long; Returns the packed coordinates, which are unpacked with getX and getY.
+   */
+  public long pop() {
+    if (size == 0) {
+      throw new NoSuchElementException("The stack is empty");
+    }
+    return coordinates[--size];
+  }
+
+  /**
+   * Gets the X coordinate of packed coordinates.
+   *
+   * @param coordinates long; The packed coordinates as returned by pop.
+   * @return int; Returns the X coordinate.
+   */
+  public static int getX(long coordinates) {
+    return (int) (coordinates >> 32);
+  }
+
+  /**
+   * Gets the Y coordinate of packed coordinates.
+   *
+   * @param coordinates long; The packed coordinates as returned by pop.
+   * @return int; Returns the Y coordinate.
+   */
+  public static int getY(long coordinates) {
+    return (int) coordinates;
+  }
+
+  /**
+   * Checks if the stack is empty.
+   *
+   * @return boolean; Returns true if the stack is empty, otherwise false.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes all coordinates from the stack, keeping its array for reuse.
+   */
+  public void clear() {
+    size = 0;
+  }
+}
@@ -0,0 +1,410 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long running counting service on a local HTTP port, so that the JVM, the JIT compiled pipeline and the buffer pools
+ * stay warm between images. POST /count with the bytes of an image in the body returns the number of cells as JSON,
+ * and with ?blobs=true also the bounding box, centroid and area of every cell. GET /stats returns the number of
+ * requests and the latency percentiles of the recent requests as JSON.
+ * <p>
+ * The images are counted by a fixed number of worker threads. A request is only admitted while fewer images are being
+ * counted or waiting than the workers plus the queue capacity, otherwise it is answered with 429 Too Many Requests at
+ * once, before its body is read, so a burst of requests cannot exhaust the memory.
+ */
+public class CountingServer {
+  private static final String PORT_OPTION = "--port=";
+  private static final String WORKERS_OPTION = "--workers=";
+  private static final String QUEUE_OPTION = "--queue=";
+  private static final String MAX_MEGABYTES_OPTION = "--max-megabytes=";
+  private static final String WARMUP_OPTION = "--warmup=";
+  private static final String BORDER_OPTION = "--border=";
+  private static final int DEFAULT_PORT = 8080;
+  private static final int DEFAULT_MAX_MEGABYTES = 64;
+  private static final int WARMUP_ROUNDS = 5;
+  private static final ThreadLocal<BufferPool> BUFFER_POOL = ThreadLocal.withInitial(BufferPool::new);
+  private final ThreadPoolExecutor workers;
+  private final Semaphore admissions;
+  private final int queueCapacity;
+  private final int maxBytes;
+  private final CellCountPipeline.borderModes borderMode;
+  private final LatencyRecorder latencies = new LatencyRecorder();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final long startTime = System.nanoTime();
+
+  /**
+   * The latencies of the most recent requests, from which the percentiles are computed.
+   */
+  private static final class LatencyRecorder {
+    private static final int CAPACITY = 4096;
+    private final long[] nanos = new long[CAPACITY];
+    private long count;
+
+    synchronized void record(long latency) {
+      nanos[(int) (count++ % CAPACITY)] = latency;
+    }
+
+    /**
+     * Gets the percentiles of the recorded latencies.
+     *
+     * @param percentiles double[]; The percentiles, from 0 to 100.
+     * @return double[]; Returns the latency in milliseconds at every percentile, or 0 if nothing has been recorded.
+     */
+    synchronized double[] getPercentiles(double[] percentiles) {
+      long[] sorted = Arrays.copyOf(nanos, (int) Math.min(count, CAPACITY));
+      Arrays.sort(sorted);
+      double[] result = new double[percentiles.length];
+      for (int i = 0; i < percentiles.length && sorted.length > 0; i++) {
+        int index = (int) Math.ceil(percentiles[i] / 100 * sorted.length) - 1;
+        result[i] = sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+      }
+      return result;
+    }
+
+    synchronized int getSampleCount() {
+      return (int) Math.min(count, CAPACITY);
+    }
+  }
+
+  /**
+   * Constructor for the CountingServer class.
+   *
+   * @param workerCount   int; The number of threads that count images at the same time.
+   * @param queueCapacity int; The number of admitted images that can wait for a worker.
+   * @param maxBytes      int; The maximum number of bytes of an image file.
+   * @param borderMode    CellCountPipeline.borderModes; How the linear filters fill the pixels outside the images.
+   */
+  CountingServer(int workerCount, int queueCapacity, int maxBytes, CellCountPipeline.borderModes borderMode) {
+    this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(Math.max(1, queueCapacity)));
+    this.admissions = new Semaphore(workerCount + queueCapacity);
+    this.queueCapacity = queueCapacity;
+    this.maxBytes = maxBytes;
+    this.borderMode = borderMode;
+  }
+
+  /**
+   * The main method parses the options, optionally warms up the pipeline and serves requests until the JVM is stopped.
+   *
+   * @param args String[]; The --port=n (8080), --workers=n (the number of processors), --queue=n (twice the workers),
+   *             --max-megabytes=n (64), --border=constant|replicate|reflect (constant) and --warmup=directory options,
+   *             where the images of the directory are counted a few times before the port is opened.
+   */
+  public static void main(String[] args) {
+    int port = DEFAULT_PORT;
+    int workerCount = Runtime.getRuntime().availableProcessors();
+    int queueCapacity = -1;
+    int maxMegabytes = DEFAULT_MAX_MEGABYTES;
+    File warmupDirectory = null;
+    CellCountPipeline.borderModes borderMode = CellCountPipeline.borderModes.CONSTANT;
+    try {
+      for (String arg : args) {
+        if (arg.startsWith(PORT_OPTION)) {
+          port = Integer.parseInt(arg.substring(PORT_OPTION.length()));
+        } else if (arg.startsWith(WORKERS_OPTION)) {
+          workerCount = Integer.parseInt(arg.substring(WORKERS_OPTION.length()));
+        } else if (arg.startsWith(QUEUE_OPTION)) {
+          queueCapacity = Integer.parseInt(arg.substring(QUEUE_OPTION.length()));
+        } else if (arg.startsWith(MAX_MEGABYTES_OPTION)) {
+          maxMegabytes = Integer.parseInt(arg.substring(MAX_MEGABYTES_OPTION.length()));
+        } else if (arg.startsWith(BORDER_OPTION)) {
+          try {
+            borderMode = CellCountPipeline.borderModes.valueOf(
+              arg.substring(BORDER_OPTION.length()).toUpperCase(Locale.ROOT));
+          } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("the border mode must be constant, replicate or reflect: " + arg);
+          }
+        } else if (arg.startsWith(WARMUP_OPTION)) {
+          warmupDirectory = new File(arg.substring(WARMUP_OPTION.length()));
+        } else {
+          throw new IllegalArgumentException(arg);
+        }
+      }
+      if (port < 0 || workerCount < 1 || maxMegabytes < 1 || maxMegabytes > 2047) {
+        throw new IllegalArgumentException("port, workers or size out of range");
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println("Invalid option: " + e.getMessage());
+      System.err.println("Usage: java Counter --serve [--port=<n>] [--workers=<n>] [--queue=<n>]"
+        + " [--max-megabytes=<n>] [--border=<constant|replicate|reflect>] [--warmup=<directory>]");
+      return;
+    }
+    if (queueCapacity < 0) {
+      queueCapacity = 2 * workerCount;
+    }
+
+    CountingServer server = new CountingServer(workerCount, queueCapacity, maxMegabytes << 20, borderMode);
+    if (warmupDirectory != null) {
+      server.warmUp(warmupDirectory);
+    }
+    try {
+      server.start(port);
+    } catch (IOException e) {
+      System.err.println("Could not open port " + port + ": " + e.getMessage());
+      server.workers.shutdownNow();
+    }
+  }
+
+  /**
+   * Counts the cells in the images of a directory a few times, so that the pipeline is compiled before the first
+   * request.
+   *
+   * @param directory File; The directory of sample images.
+   */
+  void warmUp(File directory) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      System.err.println("Cannot warm up with " + directory + ", which is not a directory");
+      return;
+    }
+    long start = System.nanoTime();
+    int counted = 0;
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      for (File file : files) {
+        try {
+          BufferedImage image = ImageIO.read(file);
+          if (image != null) {
+            GreyscaleImage greyscaleImage = GreyscaleImage.fromBufferedImage(image);
+            workers.submit(() -> countCells(greyscaleImage, false)).get();
+            counted++;
+          }
+        } catch (IOException | ExecutionException e) {
+          System.err.println("Could not warm up with " + file + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+    System.err.printf(Locale.ROOT, "Warmed up with %d counts in %.3f s%n", counted,
+      (System.nanoTime() - start) / 1e9);
+  }
+
+  /**
+   * Starts serving requests on the loopback address.
+   *
+   * @param port int; The port, or 0 for any free port.
+   * @return HttpServer; Returns the started server.
+   * @throws IOException If the port cannot be opened.
+   */
+  HttpServer start(int port) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/count", this::handleCount);
+    server.createContext("/stats", this::handleStats);
+    // Every admitted request holds a connection thread while it waits for its count, and rejected requests are
+    // answered at once, so the connection threads are not bounded separately.
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      server.stop(1);
+      workers.shutdownNow();
+    }));
+    System.err.println("Counting cells on http://" + server.getAddress().getHostString() + ":"
+      + server.getAddress().getPort() + "/count with " + workers.getMaximumPoolSize() + " workers");
+    return server;
+  }
+
+  /**
+   * Counts the cells in the image in the body of a POST request.
+   *
+   * @param exchange HttpExchange; The request and response.
+   * @throws IOException If the response cannot be sent.
+   */
+  private void handleCount(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!exchange.getRequestMethod().equals("POST")) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        sendJson(exchange, 405, "{\"error\": \"POST the image to count\"}");
+        return;
+      }
+      if (!admissions.tryAcquire()) {
+        rejected.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendJson(exchange, 429, "{\"error\": \"the queue is full\"}");
+        return;
+      }
+      long start = System.nanoTime();
+      try {
+        byte[] body = readBody(exchange.getRequestBody());
+        if (body == null) {
+          failed.incrementAndGet();
+          sendJson(exchange, 413, "{\"error\": \"the image is larger than " + maxBytes + " bytes\"}");
+          return;
+        }
+        BufferedImage image;
+        try {
+          image = ImageIO.read(new ByteArrayInputStream(body));
+        } catch (IOException e) {
+          // A body that looks like an image but cannot be decoded is not a supported image either.
+          image = null;
+        }
+        if (image == null) {
+          failed.incrementAndGet();
+          sendJson(exchange, 400, "{\"error\": \"the body is not a supported image\"}");
+          return;
+        }
+        GreyscaleImage greyscaleImage = GreyscaleImage.fromBufferedImage(image);
+        String query = exchange.getRequestURI().getQuery();
+        boolean blobs = query != null && Arrays.asList(query.split("&")).contains("blobs=true");
+        Future<String> result = workers.submit(() -> countCells(greyscaleImage, blobs));
+        String fields = result.get();
+        long latency = System.nanoTime() - start;
+        latencies.record(latency);
+        completed.incrementAndGet();
+        sendJson(exchange, 200, "{" + fields + String.format(Locale.ROOT, ", \"milliseconds\": %.3f}", latency / 1e6));
+      } catch (ExecutionException | RuntimeException e) {
+        failed.incrementAndGet();
+        sendJson(exchange, 500, "{\"error\": \"the image could not be counted\"}");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failed.incrementAndGet();
+        sendJson(exchange, 503, "{\"error\": \"the server is stopping\"}");
+      } finally {
+        admissions.release();
+      }
+    }
+  }
+
+  /**
+   * Reports the number of requests and the latency percentiles.
+   *
+   * @param exchange HttpExchange; The request and response.
+   * @throws IOException If the response cannot be sent.
+   */
+  private void handleStats(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!exchange.getRequestMethod().equals("GET")) {
+        exchange.getResponseHeaders().set("Allow", "GET");
+        sendJson(exchange, 405, "{\"error\": \"GET the statistics\"}");
+        return;
+      }
+      double[] percentiles = latencies.getPercentiles(new double[]{50, 90, 95, 99, 100});
+      String json = String.format(Locale.ROOT, "{\"uptimeSeconds\": %.3f, \"workers\": %d, \"busyWorkers\": %d,"
+          + " \"queued\": %d, \"queueCapacity\": %d, \"completed\": %d, \"rejected\": %d, \"failed\": %d,"
+          + " \"latencyMilliseconds\": {\"samples\": %d, \"p50\": %.3f, \"p90\": %.3f, \"p95\": %.3f,"
+          + " \"p99\": %.3f, \"max\": %.3f}}",
+        (System.nanoTime() - startTime) / 1e9, workers.getMaximumPoolSize(), workers.getActiveCount(),
+        workers.getQueue().size(), queueCapacity, completed.get(), rejected.get(), failed.get(),
+        latencies.getSampleCount(), percentiles[0], percentiles[1], percentiles[2], percentiles[3], percentiles[4]);
+      sendJson(exchange, 200, json);
+    }
+  }
+
+  /**
+   * Counts the cells in an image on a worker thread, with the buffer pool of the worker.
+   *
+   * @param image GreyscaleImage; The image, which is owned by the pipeline from now on.
+   * @param blobs boolean; Whether the cells are listed in the result.
+   * @return String; Returns the fields of the result as JSON, without the braces of the object.
+   */
+  private String countCells(GreyscaleImage image, boolean blobs) {
+    CellCountPipeline pipeline = new CellCountPipeline(image);
+    pipeline.setBufferPool(BUFFER_POOL.get());
+    pipeline.setBorderMode(borderMode);
+    int count = pipeline.countCells();
+    StringBuilder json = new StringBuilder();
+    json.append("\"cells\": ").append(count).append(", \"width\": ").append(image.getWidth())
+      .append(", \"height\": ").append(image.getHeight());
+    if (blobs) {
+      json.append(", \"blobs\": ");
+      appendBlobs(json, pipeline.getImage());
+    }
+    return json.toString();
+  }
+
+  /**
+   * Appends the bounding box, centroid and area of every cell of the final image as a JSON array. The cells that are
+   * left after the region labeling are labeled again, which gives the same 4-connected cells in the same order.
+   *
+   * @param json  StringBuilder; The JSON that the array is appended to.
+   * @param image GreyscaleImage; The final image of the pipeline, where the cells are the foreground.
+   */
+  private static void appendBlobs(StringBuilder json, GreyscaleImage image) {
+    ConnectedComponentLabeler labeler = new ConnectedComponentLabeler();
+    int count = labeler.label(BinaryImage.fromGreyscaleImage(image, 0), 1);
+    int width = image.getWidth();
+    int[] labels = labeler.getLabels();
+    int[] minX = new int[count + 1];
+    int[] minY = new int[count + 1];
+    int[] maxX = new int[count + 1];
+    int[] maxY = new int[count + 1];
+    long[] sumX = new long[count + 1];
+    long[] sumY = new long[count + 1];
+    Arrays.fill(minX, Integer.MAX_VALUE);
+    Arrays.fill(minY, Integer.MAX_VALUE);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < width; x++) {
+        int label = labels[y * width + x];
+        if (label != 0) {
+          minX[label] = Math.min(minX[label], x);
+          minY[label] = Math.min(minY[label], y);
+          maxX[label] = Math.max(maxX[label], x);
+          maxY[label] = Math.max(maxY[label], y);
+          sumX[label] += x;
+          sumY[label] += y;
+        }
+      }
+    }
+    json.append('[');
+    for (int label = 1; label <= count; label++) {
+      int area = labeler.getArea(label);
+      json.append(label == 1 ? "" : ", ").append(String.format(Locale.ROOT, "{\"x\": %d, \"y\": %d, \"width\": %d,"
+          + " \"height\": %d, \"centroidX\": %.2f, \"centroidY\": %.2f, \"area\": %d}", minX[label], minY[label],
+        maxX[label] - minX[label] + 1, maxY[label] - minY[label] + 1, (double) sumX[label] / area,
+        (double) sumY[label] / area, area));
+    }
+    json.append(']');
+  }
+
+  /**
+   * Reads the body of a request up to the maximum size.
+   *
+   * @param input InputStream; The body.
+   * @return byte[]; Returns the bytes of the body, or null if it is larger than the maximum.
+   * @throws IOException If the body cannot be read.
+   */
+  private byte[] readBody(InputStream input) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1 << 16];
+    int length;
+    while ((length = input.read(buffer)) >= 0) {
+      if (output.size() + length > maxBytes) {
+        return null;
+      }
+      output.write(buffer, 0, length);
+    }
+    return output.toByteArray();
+  }
+
+  private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] bytes = (json + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(bytes);
+    }
+  }
+}
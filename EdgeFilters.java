@@ -0,0 +1,105 @@
+/**
+ * The edge detection filters with their taps unrolled, so only the non zero weights of the masks are applied and no
+ * memory is allocated per pixel. The pixels outside the image are filled according to the border mode by
+ * PaddedRowFilter, where CONSTANT counts them as 0 exactly as the mask based filters did.
+ * <p>
+ * The gradient magnitude of the combined Sobel filters can be exact, where sqrt(sobelX^2 + sobelY^2) is looked up in
+ * a table of the square roots of all sums below 255^2 as every larger sum is clamped to 255 anyway, or approximated by
+ * |sobelX| + |sobelY| or max(|sobelX|, |sobelY|), which need no table at all.
+ */
+final class EdgeFilters {
+  private static final int MAX_INTENSITY = 255;
+  private static final int MAX_SQUARE = MAX_INTENSITY * MAX_INTENSITY;
+  private static final byte[] SQUARE_ROOTS = createSquareRoots();
+
+  private EdgeFilters() {
+  }
+
+  /**
+   * Creates the table of the truncated square roots of the sums of squares that are below 255^2.
+   *
+   * @return byte[]; Returns the square root of every sum.
+   */
+  private static byte[] createSquareRoots() {
+    byte[] squareRoots = new byte[MAX_SQUARE];
+    for (int sum = 0; sum < MAX_SQUARE; sum++) {
+      squareRoots[sum] = (byte) Math.sqrt(sum);
+    }
+    return squareRoots;
+  }
+
+  /**
+   * Creates the combined Sobel filters.
+   *
+   * @param borderMode CellCountPipeline.borderModes; How the pixels outside the image are filled.
+   * @param magnitude  CellCountPipeline.gradientMagnitudes; How the gradient magnitude is computed from the results of
+   *                   the Sobel X and the Sobel Y filter.
+   * @return PaddedRowFilter; Returns the combined Sobel filters.
+   */
+  static PaddedRowFilter createCombinedSobelFilters(CellCountPipeline.borderModes borderMode,
+                                                   CellCountPipeline.gradientMagnitudes magnitude) {
+    return new PaddedRowFilter(borderMode) {
+      @Override
+      void computeRow(int[] above, int[] centre, int[] below, int[] output, int width) {
+        for (int x = 0; x < width; x++) {
+          int sobelX = above[x] + 2 * centre[x] + below[x] - above[x + 2] - 2 * centre[x + 2] - below[x + 2];
+          int sobelY = above[x] + 2 * above[x + 1] + above[x + 2] - below[x] - 2 * below[x + 1] - below[x + 2];
+          int result;
+          switch (magnitude) {
+            case L1:
+              result = Math.abs(sobelX) + Math.abs(sobelY);
+              break;
+            case MAX_ABS:
+              result = Math.max(Math.abs(sobelX), Math.abs(sobelY));
+              break;
+            default:
+              int sum = sobelX * sobelX + sobelY * sobelY;
+              result = sum < MAX_SQUARE ? SQUARE_ROOTS[sum] & 0xFF : MAX_INTENSITY;
+          }
+          output[x] = Math.min(MAX_INTENSITY, result);
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates the Kirsch filters, whose result is the largest of the responses of the four compass masks.
+   *
+   * @param borderMode CellCountPipeline.borderModes; How the pixels outside the image are filled.
+   * @return PaddedRowFilter; Returns the Kirsch filters.
+   */
+  static PaddedRowFilter createKirschFilters(CellCountPipeline.borderModes borderMode) {
+    return new PaddedRowFilter(borderMode) {
+      @Override
+      void computeRow(int[] above, int[] centre, int[] below, int[] output, int width) {
+        for (int x = 0; x < width; x++) {
+          int total1 = above[x + 2] + 2 * centre[x + 2] + below[x + 2] - above[x] - 2 * centre[x] - below[x];
+          int total2 = centre[x + 2] + 2 * below[x + 2] + below[x + 1] - 2 * above[x] - above[x + 1] - centre[x];
+          int total3 = below[x] + 2 * below[x + 1] + below[x + 2] - above[x] - 2 * above[x + 1] - above[x + 2];
+          int total4 = centre[x] + 2 * below[x] + below[x + 1] - 2 * above[x + 2] - centre[x + 2] - above[x + 1];
+          int result = Math.max(Math.max(total1, total2), Math.max(total3, total4));
+          output[x] = Math.min(MAX_INTENSITY, Math.max(0, result));
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates the Laplace filter, which is 8 times the pixel minus its 8 neighbours.
+   *
+   * @param borderMode CellCountPipeline.borderModes; How the pixels outside the image are filled.
+   * @return PaddedRowFilter; Returns the Laplace filter.
+   */
+  static PaddedRowFilter createLaplaceFilter(CellCountPipeline.borderModes borderMode) {
+    return new PaddedRowFilter(borderMode) {
+      @Override
+      void computeRow(int[] above, int[] centre, int[] below, int[] output, int width) {
+        for (int x = 0; x < width; x++) {
+          int neighbours = above[x] + above[x + 1] + above[x + 2] + centre[x] + centre[x + 2] + below[x]
+            + below[x + 1] + below[x + 2];
+          output[x] = Math.min(MAX_INTENSITY, Math.max(0, 8 * centre[x + 1] - neighbours));
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Runs the preprocessing operations of CellCountPipeline.countCells, from the weighted median filter to the threshold,
+ * as two fused passes over the rows of the image instead of one pass over the whole image per operation. Every row is
+ * pushed through a chain of RowStages that keep only the few rows their kernels reach, so a row moves through all the
+ * operations of a pass while it is still in the cache, and no intermediate image is written between them.
+ * <p>
+ * The modified auto contrast needs the histogram of the whole image after the gaussian blur, which is the only
+ * barrier of the chain, so it is split there. The first pass applies the weighted median filter and the gaussian blur
+ * and creates the histogram, the second pass applies the modified auto contrast, the combined sobel filters, the
+ * weighted median filter and the threshold and creates the bit-packed binary image. The strips of the image are
+ * processed in parallel by the strip executor, each starting a few rows above and ending a few rows below its strip so
+ * that the kernels see the same rows as on the whole image. The result is identical to applying the operations one by
+ * one.
+ * <p>
+ * When the time of the stages is asked for, every chain is timed by a RowStages.StageTimer, which adds up the time of
+ * each of its stages without the stages after it, and the times of the strips are summed per stage.
+ */
+public class FusedPreprocessor {
+  /**
+   * The number of rows above and below a strip that both passes need, as each applies two 3x3 neighbourhood
+   * operations.
+   */
+  private static final int HALO = 2;
+
+  private FusedPreprocessor() {
+  }
+
+  /**
+   * Applies the preprocessing operations to the image.
+   *
+   * @param image      GreyscaleImage; The 8 bit greyscale image of cells, which is not changed.
+   * @param executor   StripExecutor; The executor that processes the strips of the image in parallel.
+   * @param pool       BufferPool; The pool that the smoothed image and the binary image are taken from.
+   * @param borderMode CellCountPipeline.borderModes; How the linear filters fill the pixels outside the image.
+   * @param sLow       double; The percentage value of the darkest pixels to be clipped by the modified auto contrast.
+   * @param sHigh      double; The percentage value of the brightest pixels to be clipped by the modified auto contrast.
+   * @param threshold  int; The intensity at and above which the pixels become the foreground.
+   * @param stageNanos long[]; The time of every stage of RowStages.FUSED_STAGES in nanoseconds, summed over the strips,
+   *                   which the time of the passes is added to, or null if the stages are not timed.
+   * @return BinaryImage; Returns the binary image where the foreground pixels are set.
+   */
+  static BinaryImage apply(GreyscaleImage image, StripExecutor executor, BufferPool pool,
+                           CellCountPipeline.borderModes borderMode, double sLow, double sHigh, int threshold,
+                           long[] stageNanos) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] strips = executor.getStrips(height);
+    byte[] pixels = image.getPixels();
+    long[][] stripNanos = stageNanos == null ? null : new long[strips.length - 1][RowStages.FUSED_STAGES.length];
+
+    // The first pass writes the smoothed image, as the second pass needs the rows around every strip.
+    GreyscaleImage smoothed = pool.acquireGreyscaleImage(width, height);
+    byte[] smoothedPixels = smoothed.getPixels();
+    long[][] histograms = new long[strips.length - 1][CellCountPipeline.TOTAL_PIXELS];
+    executor.forEachStrip(strips, (strip, fromRow, toRow) -> {
+      long[] histogram = histograms[strip];
+      RowStages.GreyscaleRowSink sink = new RowStages.GreyscaleRowSink() {
+        @Override
+        public void push(int y, byte[] row) {
+          if (y >= fromRow && y < toRow) {
+            System.arraycopy(row, 0, smoothedPixels, y * width, width);
+            for (byte intensity : row) {
+              histogram[intensity & 0xFF]++;
+            }
+          }
+        }
+
+        @Override
+        public void finish() {
+        }
+      };
+      RowStages.StageTimer timer = stripNanos == null ? null : new RowStages.StageTimer(stripNanos[strip]);
+      pushRows(pixels, width, height, fromRow, toRow, RowStages.createSmoothingStages(width, height, borderMode,
+        RowStages.time(timer, RowStages.AUTO_CONTRAST_STAGE, sink), timer));
+    });
+
+    long[] histogram = new long[CellCountPipeline.TOTAL_PIXELS];
+    for (long[] stripHistogram : histograms) {
+      for (int intensity = 0; intensity < histogram.length; intensity++) {
+        histogram[intensity] += stripHistogram[intensity];
+      }
+    }
+    LookupTable contrast = RowStages.createAutoContrast(histogram, sLow, sHigh);
+
+    // The rows of the strips start at a word, so the strips write disjoint words of the binary image, and together
+    // they overwrite all of them.
+    BinaryImage binaryImage = pool.acquireBinaryImage(width, height);
+    long[] words = binaryImage.getWords();
+    int wordsPerRow = binaryImage.getWordsPerRow();
+    executor.forEachStrip(strips, (strip, fromRow, toRow) -> {
+      RowStages.BinaryRowSink sink = new RowStages.BinaryRowSink() {
+        @Override
+        public void push(int y, long[] row) {
+          if (y >= fromRow && y < toRow) {
+            System.arraycopy(row, 0, words, y * wordsPerRow, wordsPerRow);
+          }
+        }
+
+        @Override
+        public void finish() {
+        }
+      };
+      RowStages.StageTimer timer = stripNanos == null ? null : new RowStages.StageTimer(stripNanos[strip]);
+      pushRows(smoothedPixels, width, height, fromRow, toRow,
+        RowStages.createEdgeStages(width, height, borderMode, contrast, threshold, sink, timer));
+    });
+    pool.release(smoothed);
+
+    if (stageNanos != null) {
+      for (long[] nanos : stripNanos) {
+        for (int stage = 0; stage < stageNanos.length; stage++) {
+          stageNanos[stage] += nanos[stage];
+        }
+      }
+    }
+    return binaryImage;
+  }
+
+  /**
+   * Pushes the rows of a strip and the rows of the halo around it to the first stage of a chain.
+   *
+   * @param pixels  byte[]; The pixels of the image, row by row.
+   * @param width   int; The width of the image.
+   * @param height  int; The height of the image.
+   * @param fromRow int; The first row of the strip.
+   * @param toRow   int; The row after the last row of the strip.
+   * @param first   GreyscaleRowSink; The first stage.
+   */
+  private static void pushRows(byte[] pixels, int width, int height, int fromRow, int toRow,
+                               RowStages.GreyscaleRowSink first) {
+    byte[] row = new byte[width];
+    for (int y = Math.max(0, fromRow - HALO); y < Math.min(height, toRow + HALO); y++) {
+      System.arraycopy(pixels, y * width, row, 0, width);
+      first.push(y, row);
+    }
+    first.finish();
+  }
+}
@@ -0,0 +1,149 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * An 8 bit greyscale image that stores one intensity value per pixel in a flat byte array in row-major order. The image
+ * processing pipeline works on this representation so that the BufferedImage is only touched once when the image is
+ * loaded and once when it is displayed or exported.
+ */
+public class GreyscaleImage {
+  private final int width;
+  private final int height;
+  private final byte[] pixels;
+
+  /**
+   * Constructor for the GreyscaleImage class that creates a black image of the given size.
+   *
+   * @param width  int; The width of the image in pixels.
+   * @param height int; The height of the image in pixels.
+   */
+  public GreyscaleImage(int width, int height) {
+    this(width, height, new byte[width * height]);
+  }
+
+  /**
+   * Constructor for the GreyscaleImage class that wraps the given row-major array of intensity values.
+   *
+   * @param width  int; The width of the image in pixels.
+   * @param height int; The height of the image in pixels.
+   * @param pixels byte[]; The intensity values of the image in row-major order.
+   */
+  public GreyscaleImage(int width, int height, byte[] pixels) {
+    if (pixels.length != width * height) {
+      throw new IllegalArgumentException("Expected " + (width * height) + " pixels but got " + pixels.length);
+    }
+    this.width = width;
+    this.height = height;
+    this.pixels = pixels;
+  }
+
+  /**
+   * Creates a greyscale image from the blue component of every pixel of the given image, reading it one row at a time.
+   *
+   * @param image BufferedImage; The 8 bit greyscale image that is to be converted.
+   * @return GreyscaleImage; Returns a new greyscale image holding the intensity values of the given image.
+   */
+  public static GreyscaleImage fromBufferedImage(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    GreyscaleImage greyscaleImage = new GreyscaleImage(width, height);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        greyscaleImage.pixels[offset + x] = (byte) row[x];
+      }
+    }
+    return greyscaleImage;
+  }
+
+  /**
+   * Creates an RGB image of this greyscale image, which can be displayed in the GUI or written to a file.
+   *
+   * @return BufferedImage; Returns a new RGB image where every component of a pixel holds its intensity value.
+   */
+  public BufferedImage toBufferedImage() {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        row[x] = getPixelValue(pixels[offset + x] & 0xFF);
+      }
+      image.setRGB(0, y, width, 1, row, 0, width);
+    }
+    return image;
+  }
+
+  /**
+   * Returns the pixel value after applying the greyscale or binary intensity to the RGB components.
+   *
+   * @param intensity int; The intensity value to be applied to the RGB components.
+   * @return int; Returns the integer pixel value after applying the greyscale or the binary intensity to the RGB
+   * components.
+   */
+  private static int getPixelValue(int intensity) {
+    return ((intensity & 0xFF) << 16) | ((intensity & 0xFF) << 8) | (intensity & 0xFF);
+  }
+
+  /**
+   * Gets the intensity value of a pixel.
+   *
+   * @param x int; X coordinate of the image.
+   * @param y int; Y coordinate of the image.
+   * @return int; Returns the integer intensity value between 0 and 255.
+   */
+  public int getIntensity(int x, int y) {
+    return pixels[y * width + x] & 0xFF;
+  }
+
+  /**
+   * Sets the intensity value of a pixel. Only the lowest 8 bits of the given value are stored.
+   *
+   * @param x         int; X coordinate of the image.
+   * @param y         int; Y coordinate of the image.
+   * @param intensity int; The intensity value to be stored.
+   */
+  public void setIntensity(int x, int y, int intensity) {
+    pixels[y * width + x] = (byte) intensity;
+  }
+
+  /**
+   * Copies the intensity values of the given image of the same size into this image.
+   *
+   * @param other GreyscaleImage; The image whose intensity values are to be copied.
+   */
+  public void copyFrom(GreyscaleImage other) {
+    if (other.width != width || other.height != height) {
+      throw new IllegalArgumentException("Cannot copy a " + other.width + "x" + other.height + " image into a "
+        + width + "x" + height + " image");
+    }
+    System.arraycopy(other.pixels, 0, pixels, 0, pixels.length);
+  }
+
+  /**
+   * Creates a copy of this image.
+   *
+   * @return GreyscaleImage; Returns a new image holding the same intensity values.
+   */
+  public GreyscaleImage copy() {
+    return new GreyscaleImage(width, height, pixels.clone());
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the backing array of the image, where the intensity of pixel (x, y) is stored at index y * width + x.
+   *
+   * @return byte[]; Returns the row-major array of intensity values, which is not copied.
+   */
+  public byte[] getPixels() {
+    return pixels;
+  }
+}
@@ -0,0 +1,97 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Reads the rows of an image file in bands of rows with an ImageReader, so that only one band of the image is decoded
+ * and held in memory at a time. The blue component of every pixel is used as its intensity, as when the whole image is
+ * read. Tiled formats such as TIFF decode only the tiles of the band, while the readers of formats that can only be
+ * decoded from the top, such as PNG and JPEG, decode the image up to the end of every band, so the bands are made as
+ * large as the memory allows to keep their number small.
+ */
+public class ImageRowSource implements RowSource, Closeable {
+  private static final int BAND_PIXELS = 1 << 21;
+  private final ImageInputStream input;
+  private final ImageReader reader;
+  private final int width;
+  private final int height;
+  private final int maxBandRows;
+  private final int[] pixels;
+  private BufferedImage band;
+  private int bandStart = -1;
+  private int bandRows;
+
+  /**
+   * Constructor for the ImageRowSource class that opens the image file and reads its size.
+   *
+   * @param file File; The 8 bit greyscale image file.
+   * @throws IOException if the file cannot be opened or is not in a supported image format.
+   */
+  public ImageRowSource(File file) throws IOException {
+    input = ImageIO.createImageInputStream(file);
+    if (input == null) {
+      throw new IOException("Cannot open " + file);
+    }
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+    if (!readers.hasNext()) {
+      input.close();
+      throw new IOException("No image reader for " + file);
+    }
+    reader = readers.next();
+    reader.setInput(input);
+    width = reader.getWidth(0);
+    height = reader.getHeight(0);
+    maxBandRows = Math.max(1, BAND_PIXELS / width);
+    pixels = new int[width];
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public void readRow(int y, byte[] row) throws IOException {
+    if (y < bandStart || y >= bandStart + bandRows) {
+      readBand(y);
+    }
+    band.getRGB(0, y - bandStart, width, 1, pixels, 0, width);
+    for (int x = 0; x < width; x++) {
+      row[x] = (byte) pixels[x];
+    }
+  }
+
+  /**
+   * Decodes the band of rows that starts at the given row.
+   *
+   * @param fromRow int; The first row of the band.
+   * @throws IOException if the rows cannot be decoded.
+   */
+  private void readBand(int fromRow) throws IOException {
+    // The previous band is released before the next one is decoded.
+    band = null;
+    bandRows = Math.min(maxBandRows, height - fromRow);
+    ImageReadParam param = reader.getDefaultReadParam();
+    param.setSourceRegion(new Rectangle(0, fromRow, width, bandRows));
+    band = reader.read(0, param);
+    bandStart = fromRow;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.dispose();
+    input.close();
+  }
+}
@@ -0,0 +1,66 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Reads regions of an image file with an ImageReader, which decodes only the tiles of the region for tiled formats
+ * such as TIFF. An ImageReader cannot be used by several threads at once, so the regions are decoded one at a time
+ * while the tiles that have been read are processed in parallel.
+ */
+public class ImageTileSource implements TileSource, Closeable {
+  private final ImageInputStream input;
+  private final ImageReader reader;
+  private final int width;
+  private final int height;
+
+  /**
+   * Constructor for the ImageTileSource class that opens the image file and reads its size.
+   *
+   * @param file File; The 8 bit greyscale image file.
+   * @throws IOException if the file cannot be opened or is not in a supported image format.
+   */
+  public ImageTileSource(File file) throws IOException {
+    input = ImageIO.createImageInputStream(file);
+    if (input == null) {
+      throw new IOException("Cannot open " + file);
+    }
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+    if (!readers.hasNext()) {
+      input.close();
+      throw new IOException("No image reader for " + file);
+    }
+    reader = readers.next();
+    reader.setInput(input);
+    width = reader.getWidth(0);
+    height = reader.getHeight(0);
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public synchronized GreyscaleImage readRegion(int x, int y, int width, int height) throws IOException {
+    ImageReadParam param = reader.getDefaultReadParam();
+    param.setSourceRegion(new Rectangle(x, y, width, height));
+    return GreyscaleImage.fromBufferedImage(reader.read(0, param));
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    reader.dispose();
+    input.close();
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * A point operation on 8 bit intensities, compiled into a table of the new intensity of every one of the 256
+ * intensities, so that applying it costs one table lookup per pixel without any branch or arithmetic. Consecutive point
+ * operations are composed into a single table, e.g. the modified auto contrast followed by the threshold, so the image
+ * is only passed over once however many point operations are chained.
+ */
+public final class LookupTable {
+  private static final int MAX_INTENSITY = 255;
+  private static final int SIZE = MAX_INTENSITY + 1;
+  private final byte[] table;
+
+  /**
+   * Constructor for the LookupTable class.
+   *
+   * @param table byte[]; The new intensity of every intensity, which is owned by the table from now on.
+   */
+  private LookupTable(byte[] table) {
+    this.table = table;
+  }
+
+  /**
+   * Creates the point operation that leaves every intensity unchanged.
+   *
+   * @return LookupTable; Returns the identity.
+   */
+  public static LookupTable identity() {
+    byte[] table = new byte[SIZE];
+    for (int intensity = 0; intensity < SIZE; intensity++) {
+      table[intensity] = (byte) intensity;
+    }
+    return new LookupTable(table);
+  }
+
+  /**
+   * Creates the modified auto contrast, which stretches the intensities between the limits linearly over the whole
+   * range of intensities. The stretch factor is exact rather than truncated to an integer, and the result is rounded
+   * to the nearest intensity.
+   *
+   * @param aHatLow  int; The intensity at and below which the pixels become black.
+   * @param aHatHigh int; The intensity at and above which the pixels become white.
+   * @return LookupTable; Returns the modified auto contrast.
+   */
+  public static LookupTable autoContrast(int aHatLow, int aHatHigh) {
+    byte[] table = new byte[SIZE];
+    int range = aHatHigh - aHatLow;
+    for (int intensity = 0; intensity < SIZE; intensity++) {
+      int value;
+      if (intensity <= aHatLow) {
+        value = 0;
+      } else if (intensity >= aHatHigh) {
+        value = MAX_INTENSITY;
+      } else {
+        value = (2 * (intensity - aHatLow) * MAX_INTENSITY + range) / (2 * range);
+      }
+      table[intensity] = (byte) value;
+    }
+    return new LookupTable(table);
+  }
+
+  /**
+   * Creates a threshold, which maps every intensity to one of two intensities.
+   *
+   * @param threshold      int; The lowest intensity that is mapped to the upper intensity.
+   * @param lowerIntensity int; The intensity of the pixels below the threshold.
+   * @param upperIntensity int; The intensity of the pixels at or above the threshold.
+   * @return LookupTable; Returns the threshold.
+   */
+  public static LookupTable threshold(int threshold, int lowerIntensity, int upperIntensity) {
+    byte[] table = new byte[SIZE];
+    for (int intensity = 0; intensity < SIZE; intensity++) {
+      table[intensity] = (byte) (intensity < threshold ? lowerIntensity : upperIntensity);
+    }
+    return new LookupTable(table);
+  }
+
+  /**
+   * Creates a gamma correction, which maps the intensity a to 255 * (a / 255) ^ gamma, rounded to the nearest
+   * intensity.
+   *
+   * @param gamma double; The exponent, where values below 1 brighten the dark intensities and values above 1 darken
+   *              them.
+   * @return LookupTable; Returns the gamma correction.
+   */
+  public static LookupTable gamma(double gamma) {
+    if (!(gamma > 0)) {
+      throw new IllegalArgumentException("The gamma must be positive, but is " + gamma);
+    }
+    byte[] table = new byte[SIZE];
+    for (int intensity = 0; intensity < SIZE; intensity++) {
+      table[intensity] = (byte) Math.round(MAX_INTENSITY * Math.pow((double) intensity / MAX_INTENSITY, gamma));
+    }
+    return new LookupTable(table);
+  }
+
+  /**
+   * Creates the inversion, which maps the intensity a to 255 - a.
+   *
+   * @return LookupTable; Returns the inversion.
+   */
+  public static LookupTable invert() {
+    byte[] table = new byte[SIZE];
+    for (int intensity = 0; intensity < SIZE; intensity++) {
+      table[intensity] = (byte) (MAX_INTENSITY - intensity);
+    }
+    return new LookupTable(table);
+  }
+
+  /**
+   * Composes this point operation with the one that follows it into a single point operation.
+   *
+   * @param next LookupTable; The point operation that is applied after this one.
+   * @return LookupTable; Returns the point operation that has the same result as applying this one and then the next.
+   */
+  public LookupTable andThen(LookupTable next) {
+    byte[] composed = new byte[SIZE];
+    for (int intensity = 0; intensity < SIZE; intensity++) {
+      composed[intensity] = next.table[table[intensity] & 0xFF];
+    }
+    return new LookupTable(composed);
+  }
+
+  /**
+   * Gets the new intensity of an intensity.
+   *
+   * @param intensity int; The intensity, from 0 to 255.
+   * @return int; Returns the intensity after the point operation.
+   */
+  public int get(int intensity) {
+    return table[intensity] & 0xFF;
+  }
+
+  /**
+   * Applies the point operation to the pixels of an array, in place.
+   *
+   * @param pixels byte[]; The intensities that are to be mapped.
+   * @param from   int; The index of the first pixel.
+   * @param to     int; The index after the last pixel.
+   */
+  public void apply(byte[] pixels, int from, int to) {
+    byte[] table = this.table;
+    for (int i = from; i < to; i++) {
+      pixels[i] = table[pixels[i] & 0xFF];
+    }
+  }
+
+  /**
+   * Applies the point operation to every pixel of an image, in place.
+   *
+   * @param image GreyscaleImage; The image that is to be changed.
+   */
+  public void apply(GreyscaleImage image) {
+    byte[] pixels = image.getPixels();
+    apply(pixels, 0, pixels.length);
+  }
+}
@@ -0,0 +1,17 @@
+/**
+ * An image processing operation that computes each pixel of the target image from a small neighbourhood of the same
+ * pixel in the source image. As the source image is only read and every target row only depends on the source, the
+ * rows of the target image can be computed independently of each other.
+ */
+interface NeighbourhoodOperation {
+  /**
+   * Computes the given rows of the target image. Rows of the source image outside the range, up to the radius of the
+   * neighbourhood, may be read but no rows of the target image outside the range may be written.
+   *
+   * @param source  GreyscaleImage; The image that the operation is applied to, which must not be modified.
+   * @param target  GreyscaleImage; The image of the same size that the result is written to.
+   * @param fromRow int; The first row of the target image to be computed.
+   * @param toRow   int; The row after the last row of the target image to be computed.
+   */
+  void apply(GreyscaleImage source, GreyscaleImage target, int fromRow, int toRow);
+}
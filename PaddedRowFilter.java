@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+/**
+ * A 3x3 neighbourhood operation that computes every row of the target image from the rows above, at and below it,
+ * widened to int with a padding column on both sides and a padding row above and below the image. The padding is
+ * filled once per row according to the border mode, so the inner loops of the kernels read the 9 taps of every pixel
+ * without any boundary check, and every source row is widened only once.
+ * <p>
+ * With CONSTANT the pixels outside the image count as 0, with REPLICATE they take the value of the nearest pixel of the
+ * image, and with REFLECT they mirror the image about its border pixels, so x = -1 takes the value of x = 1. A filter
+ * without a border mode, such as the weighted median filter, finds the pixels outside the image marked as OUTSIDE, so
+ * that it can leave them out.
+ */
+abstract class PaddedRowFilter implements NeighbourhoodOperation {
+  /**
+   * The value of the pixels outside the image for a filter without a border mode.
+   */
+  static final int OUTSIDE = -1;
+  private final CellCountPipeline.borderModes borderMode;
+  private final int outsideValue;
+
+  /**
+   * Constructor for the PaddedRowFilter class.
+   *
+   * @param borderMode CellCountPipeline.borderModes; How the pixels outside the image are filled.
+   */
+  PaddedRowFilter(CellCountPipeline.borderModes borderMode) {
+    this.borderMode = borderMode;
+    this.outsideValue = 0;
+  }
+
+  /**
+   * Constructor for a filter that leaves the pixels outside the image out, which are marked as OUTSIDE.
+   */
+  PaddedRowFilter() {
+    this.borderMode = null;
+    this.outsideValue = OUTSIDE;
+  }
+
+  @Override
+  public void apply(GreyscaleImage source, GreyscaleImage target, int fromRow, int toRow) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    byte[] pixels = source.getPixels();
+    byte[] result = target.getPixels();
+    int[][] rows = new int[3][width + 2];
+    int[] output = new int[width];
+    widenRow(pixels, width, height, fromRow - 1, rows[0]);
+    widenRow(pixels, width, height, fromRow, rows[1]);
+    for (int y = fromRow; y < toRow; y++) {
+      widenRow(pixels, width, height, y + 1, rows[2]);
+      computeRow(rows[0], rows[1], rows[2], output, width);
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        result[offset + x] = (byte) output[x];
+      }
+      int[] first = rows[0];
+      rows[0] = rows[1];
+      rows[1] = rows[2];
+      rows[2] = first;
+    }
+  }
+
+  /**
+   * Computes a row of the target image.
+   *
+   * @param above  int[]; The widened row above the row, where pixel x is at index x + 1.
+   * @param centre int[]; The widened row itself.
+   * @param below  int[]; The widened row below the row.
+   * @param output int[]; The intensities of the row, from 0 to 255.
+   * @param width  int; The width of the image.
+   */
+  abstract void computeRow(int[] above, int[] centre, int[] below, int[] output, int width);
+
+  /**
+   * Widens a row of the source image to int and fills the padding on both sides, or fills the whole row according to
+   * the border mode if it is outside the image.
+   *
+   * @param pixels byte[]; The pixels of the source image.
+   * @param width  int; The width of the image.
+   * @param height int; The height of the image.
+   * @param y      int; The Y coordinate of the row, from -1 to the height.
+   * @param row    int[]; The widened row, where pixel x is at index x + 1.
+   */
+  private void widenRow(byte[] pixels, int width, int height, int y, int[] row) {
+    int sourceRow = getSourceIndex(y, height);
+    if (sourceRow < 0) {
+      fillOutsideRow(row);
+      return;
+    }
+    widenRow(pixels, sourceRow * width, width, row);
+  }
+
+  /**
+   * Widens a row of the image to int and fills the padding on both sides according to the border mode.
+   *
+   * @param pixels byte[]; The pixels that contain the row.
+   * @param offset int; The index of the first pixel of the row.
+   * @param width  int; The width of the image.
+   * @param row    int[]; The widened row, where pixel x is at index x + 1.
+   */
+  void widenRow(byte[] pixels, int offset, int width, int[] row) {
+    for (int x = 0; x < width; x++) {
+      row[x + 1] = pixels[offset + x] & 0xFF;
+    }
+    int left = getSourceIndex(-1, width);
+    int right = getSourceIndex(width, width);
+    row[0] = left < 0 ? outsideValue : row[left + 1];
+    row[width + 1] = right < 0 ? outsideValue : row[right + 1];
+  }
+
+  /**
+   * Fills a widened row that is entirely outside the image and counts as 0 or is OUTSIDE.
+   *
+   * @param row int[]; The widened row.
+   */
+  void fillOutsideRow(int[] row) {
+    Arrays.fill(row, outsideValue);
+  }
+
+  /**
+   * Gets the index of the pixel of the image whose value a pixel just outside the image takes.
+   *
+   * @param index int; The X or Y coordinate, from -1 to the size.
+   * @param size  int; The width or height of the image.
+   * @return int; Returns the coordinate within the image, or -1 if the pixel counts as 0 or is OUTSIDE.
+   */
+  int getSourceIndex(int index, int size) {
+    if (index >= 0 && index < size) {
+      return index;
+    }
+    if (borderMode == null) {
+      return -1;
+    }
+    switch (borderMode) {
+      case REPLICATE:
+        return index < 0 ? 0 : size - 1;
+      case REFLECT:
+        // An image of a single pixel has nothing to mirror, so the border pixel itself is used.
+        return size == 1 ? 0 : index < 0 ? 1 : size - 2;
+      default:
+        return -1;
+    }
+  }
+}
@@ -0,0 +1,451 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects the wall time, the throughput and the allocated bytes of every stage of the image processing pipeline, for
+ * every image of a run. A pipeline records its stages with the Recorder that it gets from startImage, and the collected
+ * metrics can be printed as a summary table or exported as JSON or in the Prometheus text format, so that the runs on
+ * the same frames can be compared over time.
+ * <p>
+ * The allocated bytes are counted on the thread that runs the pipeline, so the allocations of the worker threads of a
+ * parallel strip executor are not included, and they are -1 if the JVM cannot count them. The time that a stage
+ * listener takes to display an image is not included in the stages. The metrics can be collected by several threads
+ * at once.
+ */
+public class PipelineMetrics {
+  private static final double NANOS_PER_SECOND = 1e9;
+  private static final double NANOS_PER_MILLISECOND = 1e6;
+  private static final double BYTES_PER_MEGABYTE = 1 << 20;
+  private static final String PROMETHEUS_PREFIX = "cellcounter_";
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final boolean ALLOCATIONS_SUPPORTED = isAllocationCountingSupported();
+  private final List<ImageMetrics> images = new ArrayList<>();
+
+  enum exportFormats {TABLE, JSON, PROMETHEUS}
+
+  /**
+   * The metrics of a stage of the pipeline on a single image.
+   */
+  static final class StageMetrics {
+    final String name;
+    final long pixels;
+    final long nanos;
+    final long allocatedBytes;
+
+    private StageMetrics(String name, long pixels, long nanos, long allocatedBytes) {
+      this.name = name;
+      this.pixels = pixels;
+      this.nanos = nanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+  }
+
+  /**
+   * The metrics of all the stages of the pipeline on a single image.
+   */
+  static final class ImageMetrics {
+    final String name;
+    final int width;
+    final int height;
+    final int cells;
+    final List<StageMetrics> stages;
+
+    private ImageMetrics(String name, int width, int height, int cells, List<StageMetrics> stages) {
+      this.name = name;
+      this.width = width;
+      this.height = height;
+      this.cells = cells;
+      this.stages = stages;
+    }
+
+    long getNanos() {
+      long nanos = 0;
+      for (StageMetrics stage : stages) {
+        nanos += stage.nanos;
+      }
+      return nanos;
+    }
+
+    long getAllocatedBytes() {
+      long allocatedBytes = 0;
+      for (StageMetrics stage : stages) {
+        if (stage.allocatedBytes < 0) {
+          return -1;
+        }
+        allocatedBytes += stage.allocatedBytes;
+      }
+      return allocatedBytes;
+    }
+  }
+
+  /**
+   * Records the stages of the pipeline on a single image. A stage starts when the recorder is created or the previous
+   * stage has ended. A recorder must only be used by the thread that runs the pipeline.
+   */
+  final class Recorder {
+    private final String imageName;
+    private final int width;
+    private final int height;
+    private final List<StageMetrics> stages = new ArrayList<>();
+    private long stageStart;
+    private long stageAllocatedBytes;
+
+    private Recorder(String imageName, int width, int height) {
+      this.imageName = imageName;
+      this.width = width;
+      this.height = height;
+      startStage();
+    }
+
+    /**
+     * Starts the next stage, e.g. to leave out the work that was done since the previous stage ended.
+     */
+    void startStage() {
+      stageAllocatedBytes = getAllocatedBytes();
+      stageStart = System.nanoTime();
+    }
+
+    /**
+     * Ends the current stage and records it.
+     *
+     * @param stage String; The name of the stage.
+     */
+    void endStage(String stage) {
+      long nanos = System.nanoTime() - stageStart;
+      long allocatedBytes = ALLOCATIONS_SUPPORTED ? getAllocatedBytes() - stageAllocatedBytes : -1;
+      stages.add(new StageMetrics(stage, (long) width * height, nanos, allocatedBytes));
+      startStage();
+    }
+
+    /**
+     * Ends the current stage, which ran several stages at once, and records them separately. The wall time and the
+     * allocated bytes of the current stage are shared between them in proportion to their weights, e.g. the time
+     * spent in each of them summed over the strips that ran in parallel, so together they add up to the current
+     * stage.
+     *
+     * @param stages  String[]; The names of the stages.
+     * @param weights long[]; The weight of every stage, where all weights 0 share equally.
+     */
+    void endStages(String[] stages, long[] weights) {
+      long nanos = System.nanoTime() - stageStart;
+      long allocatedBytes = ALLOCATIONS_SUPPORTED ? getAllocatedBytes() - stageAllocatedBytes : -1;
+      long totalWeight = 0;
+      for (long weight : weights) {
+        totalWeight += weight;
+      }
+      // The shares are taken from the cumulative weights, so that the rounding does not change the sum.
+      long weight = 0;
+      long recordedNanos = 0;
+      long recordedBytes = 0;
+      for (int i = 0; i < stages.length; i++) {
+        weight += totalWeight == 0 ? 1 : weights[i];
+        double fraction = (double) weight / (totalWeight == 0 ? stages.length : totalWeight);
+        long stageNanos = Math.round(nanos * fraction) - recordedNanos;
+        long stageBytes = allocatedBytes < 0 ? -1 : Math.round(allocatedBytes * fraction) - recordedBytes;
+        this.stages.add(new StageMetrics(stages[i], (long) width * height, stageNanos, stageBytes));
+        recordedNanos += stageNanos;
+        recordedBytes += stageBytes;
+      }
+      startStage();
+    }
+
+    /**
+     * Adds the recorded stages of the image to the metrics of the run.
+     *
+     * @param cells int; The number of cells found in the image.
+     */
+    void finish(int cells) {
+      addImage(new ImageMetrics(imageName, width, height, cells, new ArrayList<>(stages)));
+    }
+  }
+
+  /**
+   * Starts recording the stages of the pipeline on an image.
+   *
+   * @param imageName String; The name of the image, e.g. its file name.
+   * @param width     int; The width of the image.
+   * @param height    int; The height of the image.
+   * @return Recorder; Returns the recorder of the stages of the image.
+   */
+  Recorder startImage(String imageName, int width, int height) {
+    return new Recorder(imageName, width, height);
+  }
+
+  private synchronized void addImage(ImageMetrics image) {
+    images.add(image);
+  }
+
+  /**
+   * Gets the metrics of the images that have been counted so far.
+   *
+   * @return List of ImageMetrics; Returns a copy of the metrics of the images in the order they were finished.
+   */
+  synchronized List<ImageMetrics> getImages() {
+    return new ArrayList<>(images);
+  }
+
+  /**
+   * Formats the metrics in the given format.
+   *
+   * @param format exportFormats (enum); The format, which is TABLE, JSON or PROMETHEUS.
+   * @return String; Returns the formatted metrics.
+   */
+  String format(exportFormats format) {
+    switch (format) {
+      case JSON:
+        return toJson();
+      case PROMETHEUS:
+        return toPrometheus();
+      default:
+        return toTable();
+    }
+  }
+
+  /**
+   * Formats the metrics as a summary table of the stages, summed over all images, followed by a table of the images.
+   *
+   * @return String; Returns the tables as lines of text.
+   */
+  String toTable() {
+    List<ImageMetrics> images = getImages();
+    Map<String, StageMetrics> stages = sumStages(images);
+    long totalNanos = 0;
+    for (StageMetrics stage : stages.values()) {
+      totalNanos += stage.nanos;
+    }
+
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format(Locale.ROOT, "%-40s %6s %12s %7s %10s %12s%n", "stage", "runs", "milliseconds",
+      "share", "MP/s", "allocated MB"));
+    for (Map.Entry<String, StageMetrics> entry : stages.entrySet()) {
+      StageMetrics stage = entry.getValue();
+      builder.append(String.format(Locale.ROOT, "%-40s %6d %12.3f %6.1f%% %10.2f %12s%n", entry.getKey(),
+        countRuns(images, entry.getKey()), stage.nanos / NANOS_PER_MILLISECOND,
+        totalNanos == 0 ? 0.0 : 100.0 * stage.nanos / totalNanos, getPixelsPerSecond(stage.pixels, stage.nanos) / 1e6,
+        formatMegabytes(stage.allocatedBytes)));
+    }
+    builder.append(String.format(Locale.ROOT, "%n%-40s %11s %6s %12s %10s %12s%n", "image", "size", "cells",
+      "milliseconds", "MP/s", "allocated MB"));
+    for (ImageMetrics image : images) {
+      long nanos = image.getNanos();
+      builder.append(String.format(Locale.ROOT, "%-40s %11s %6d %12.3f %10.2f %12s%n", image.name,
+        image.width + "x" + image.height, image.cells, nanos / NANOS_PER_MILLISECOND,
+        getPixelsPerSecond((long) image.width * image.height, nanos) / 1e6,
+        formatMegabytes(image.getAllocatedBytes())));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Formats the metrics as a JSON object with the stages of every image and the stages summed over all images.
+   *
+   * @return String; Returns the JSON object.
+   */
+  String toJson() {
+    List<ImageMetrics> images = getImages();
+    StringBuilder builder = new StringBuilder("{\n  \"images\": [");
+    for (int i = 0; i < images.size(); i++) {
+      ImageMetrics image = images.get(i);
+      builder.append(i == 0 ? "\n" : ",\n");
+      builder.append("    {\"name\": ").append(quoteJson(image.name))
+        .append(", \"width\": ").append(image.width)
+        .append(", \"height\": ").append(image.height)
+        .append(", \"cells\": ").append(image.cells);
+      appendJsonMetrics(builder, (long) image.width * image.height, image.getNanos(), image.getAllocatedBytes());
+      builder.append(", \"stages\": [");
+      for (int j = 0; j < image.stages.size(); j++) {
+        StageMetrics stage = image.stages.get(j);
+        builder.append(j == 0 ? "\n" : ",\n").append("      {\"name\": ").append(quoteJson(stage.name));
+        appendJsonMetrics(builder, stage.pixels, stage.nanos, stage.allocatedBytes);
+        builder.append('}');
+      }
+      builder.append("\n    ]}");
+    }
+    builder.append("\n  ],\n  \"stages\": [");
+    int j = 0;
+    for (Map.Entry<String, StageMetrics> entry : sumStages(images).entrySet()) {
+      StageMetrics stage = entry.getValue();
+      builder.append(j++ == 0 ? "\n" : ",\n").append("    {\"name\": ").append(quoteJson(entry.getKey()))
+        .append(", \"runs\": ").append(countRuns(images, entry.getKey()));
+      appendJsonMetrics(builder, stage.pixels, stage.nanos, stage.allocatedBytes);
+      builder.append('}');
+    }
+    return builder.append("\n  ]\n}\n").toString();
+  }
+
+  /**
+   * Formats the metrics in the Prometheus text exposition format. The stages are summed over all images, so that the
+   * number of series does not grow with the number of images.
+   *
+   * @return String; Returns the metric families as lines of text.
+   */
+  String toPrometheus() {
+    List<ImageMetrics> images = getImages();
+    Map<String, StageMetrics> stages = sumStages(images);
+    StringBuilder builder = new StringBuilder();
+
+    appendPrometheusHeader(builder, "stage_runs_total", "The number of times the stage has run.");
+    for (String stage : stages.keySet()) {
+      appendPrometheusSample(builder, "stage_runs_total", stage, Integer.toString(countRuns(images, stage)));
+    }
+    appendPrometheusHeader(builder, "stage_seconds_total", "The wall time spent in the stage.");
+    for (Map.Entry<String, StageMetrics> entry : stages.entrySet()) {
+      appendPrometheusSample(builder, "stage_seconds_total", entry.getKey(),
+        formatDouble(entry.getValue().nanos / NANOS_PER_SECOND));
+    }
+    appendPrometheusHeader(builder, "stage_pixels_total", "The number of pixels processed by the stage.");
+    for (Map.Entry<String, StageMetrics> entry : stages.entrySet()) {
+      appendPrometheusSample(builder, "stage_pixels_total", entry.getKey(), Long.toString(entry.getValue().pixels));
+    }
+    if (ALLOCATIONS_SUPPORTED) {
+      appendPrometheusHeader(builder, "stage_allocated_bytes_total",
+        "The bytes allocated by the stage on the thread running the pipeline.");
+      for (Map.Entry<String, StageMetrics> entry : stages.entrySet()) {
+        appendPrometheusSample(builder, "stage_allocated_bytes_total", entry.getKey(),
+          Long.toString(entry.getValue().allocatedBytes));
+      }
+    }
+
+    long pixels = 0;
+    long nanos = 0;
+    long cells = 0;
+    for (ImageMetrics image : images) {
+      pixels += (long) image.width * image.height;
+      nanos += image.getNanos();
+      cells += image.cells;
+    }
+    appendPrometheusHeader(builder, "images_total", "The number of images counted.");
+    appendPrometheusSample(builder, "images_total", null, Integer.toString(images.size()));
+    appendPrometheusHeader(builder, "image_seconds_total", "The wall time spent in all the stages of the images.");
+    appendPrometheusSample(builder, "image_seconds_total", null, formatDouble(nanos / NANOS_PER_SECOND));
+    appendPrometheusHeader(builder, "image_pixels_total", "The number of pixels of the images.");
+    appendPrometheusSample(builder, "image_pixels_total", null, Long.toString(pixels));
+    appendPrometheusHeader(builder, "cells_total", "The number of cells found in the images.");
+    appendPrometheusSample(builder, "cells_total", null, Long.toString(cells));
+    return builder.toString();
+  }
+
+  /**
+   * Sums the metrics of every stage over all images, keeping the stages in the order they first ran.
+   *
+   * @param images List of ImageMetrics; The metrics of the images.
+   * @return Map of String to StageMetrics; Returns the summed metrics by the name of the stage.
+   */
+  private static Map<String, StageMetrics> sumStages(List<ImageMetrics> images) {
+    Map<String, StageMetrics> stages = new LinkedHashMap<>();
+    for (ImageMetrics image : images) {
+      for (StageMetrics stage : image.stages) {
+        stages.merge(stage.name, stage, (sum, next) -> new StageMetrics(sum.name, sum.pixels + next.pixels,
+          sum.nanos + next.nanos, sum.allocatedBytes < 0 ? -1 : sum.allocatedBytes + next.allocatedBytes));
+      }
+    }
+    return stages;
+  }
+
+  private static int countRuns(List<ImageMetrics> images, String stageName) {
+    int runs = 0;
+    for (ImageMetrics image : images) {
+      for (StageMetrics stage : image.stages) {
+        if (stage.name.equals(stageName)) {
+          runs++;
+        }
+      }
+    }
+    return runs;
+  }
+
+  private static double getPixelsPerSecond(long pixels, long nanos) {
+    return nanos == 0 ? 0.0 : pixels * NANOS_PER_SECOND / nanos;
+  }
+
+  private static String formatMegabytes(long bytes) {
+    return bytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.2f", bytes / BYTES_PER_MEGABYTE);
+  }
+
+  private static String formatDouble(double value) {
+    return String.format(Locale.ROOT, "%.6f", value);
+  }
+
+  private static void appendJsonMetrics(StringBuilder builder, long pixels, long nanos, long allocatedBytes) {
+    builder.append(", \"nanos\": ").append(nanos)
+      .append(", \"pixelsPerSecond\": ").append(formatDouble(getPixelsPerSecond(pixels, nanos)))
+      .append(", \"allocatedBytes\": ").append(allocatedBytes < 0 ? "null" : Long.toString(allocatedBytes));
+  }
+
+  /**
+   * Quotes a string as a JSON string literal.
+   *
+   * @param value String; The string.
+   * @return String; Returns the string in double quotes, with the quotes, backslashes and control characters escaped.
+   */
+  private static String quoteJson(String value) {
+    StringBuilder builder = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < ' ') {
+        builder.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.append('"').toString();
+  }
+
+  private static void appendPrometheusHeader(StringBuilder builder, String name, String help) {
+    builder.append("# HELP ").append(PROMETHEUS_PREFIX).append(name).append(' ').append(help).append('\n');
+    builder.append("# TYPE ").append(PROMETHEUS_PREFIX).append(name).append(" counter\n");
+  }
+
+  /**
+   * Appends a sample of a metric, with the stage as its label if there is one. The label value is escaped as the
+   * Prometheus text format requires.
+   *
+   * @param builder StringBuilder; The builder of the text.
+   * @param name    String; The name of the metric without the prefix.
+   * @param stage   String; The name of the stage, or null if the metric has no label.
+   * @param value   String; The formatted value.
+   */
+  private static void appendPrometheusSample(StringBuilder builder, String name, String stage, String value) {
+    builder.append(PROMETHEUS_PREFIX).append(name);
+    if (stage != null) {
+      builder.append("{stage=\"")
+        .append(stage.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+        .append("\"}");
+    }
+    builder.append(' ').append(value).append('\n');
+  }
+
+  /**
+   * Gets the number of bytes that the current thread has allocated so far.
+   *
+   * @return long; Returns the allocated bytes, or 0 if they cannot be counted.
+   */
+  private static long getAllocatedBytes() {
+    if (!ALLOCATIONS_SUPPORTED) {
+      return 0;
+    }
+    return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static boolean isAllocationCountingSupported() {
+    try {
+      if (THREADS instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        if (threads.isThreadAllocatedMemorySupported()) {
+          threads.setThreadAllocatedMemoryEnabled(true);
+          return threads.isThreadAllocatedMemoryEnabled();
+        }
+      }
+    } catch (UnsupportedOperationException | LinkageError e) {
+      // The JVM has no com.sun.management, so the allocations are not counted.
+    }
+    return false;
+  }
+}
@@ -0,0 +1,337 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Checks that a build of the cell counter still finds the same cells and is not slower. Every image of the sample
+ * directory is counted, and its number of cells and the CRC-32 of the final labeled image are compared with the golden
+ * values in a properties file that is kept with the images. Every image is counted a few times after warming up, and
+ * the median milliseconds are compared with a baseline of the same machine, which is recorded the first time the
+ * harness runs. The harness fails with exit code 1 when a count or hash differs or when the throughput over all the
+ * images has dropped by more than the tolerance, and with exit code 2 when there are no golden values to compare with,
+ * unless they are to be stored.
+ */
+public class RegressionHarness {
+  private static final String GOLDEN_OPTION = "--golden=";
+  private static final String BASELINE_OPTION = "--baseline=";
+  private static final String TOLERANCE_OPTION = "--tolerance=";
+  private static final String RUNS_OPTION = "--runs=";
+  private static final String PARALLELISM_OPTION = "--parallelism=";
+  private static final String CELLS_KEY = ".cells";
+  private static final String HASH_KEY = ".hash";
+  private static final String MILLISECONDS_KEY = ".milliseconds";
+  private static final int WARMUP_RUNS = 3;
+
+  private RegressionHarness() {
+  }
+
+  /**
+   * The result of counting the cells in an image.
+   */
+  private static final class Result {
+    private final String name;
+    private final int cells;
+    private final String hash;
+    private final double milliseconds;
+
+    private Result(String name, int cells, String hash, double milliseconds) {
+      this.name = name;
+      this.cells = cells;
+      this.hash = hash;
+      this.milliseconds = milliseconds;
+    }
+  }
+
+  /**
+   * The main method parses the options, counts the cells in every image of the directory and compares the results with
+   * the golden values and the baseline.
+   *
+   * @param args String[]; The options, followed by the directory of the sample images, which is images by default:
+   *             --golden=f for the file of the golden counts and hashes (golden.properties in the directory),
+   *             --baseline=f for the file of the milliseconds (regression-baseline.properties),
+   *             --tolerance=p for the percentage by which the throughput may drop (10), --runs=n for the number of
+   *             measured counts per image (5), --parallelism=n for the threads per image (1), --no-hash to only check
+   *             the counts, --update-golden to store the current counts and hashes as the golden values and
+   *             --update-baseline to store the current milliseconds as the baseline.
+   */
+  public static void main(String[] args) {
+    File directory = new File("images");
+    File goldenFile = null;
+    File baselineFile = new File("regression-baseline.properties");
+    double tolerance = 10;
+    int runs = 5;
+    int parallelism = 1;
+    boolean checkHash = true;
+    boolean updateGolden = false;
+    boolean updateBaseline = false;
+    try {
+      for (String arg : args) {
+        if (arg.startsWith(GOLDEN_OPTION)) {
+          goldenFile = new File(arg.substring(GOLDEN_OPTION.length()));
+        } else if (arg.startsWith(BASELINE_OPTION)) {
+          baselineFile = new File(arg.substring(BASELINE_OPTION.length()));
+        } else if (arg.startsWith(TOLERANCE_OPTION)) {
+          tolerance = Double.parseDouble(arg.substring(TOLERANCE_OPTION.length()));
+        } else if (arg.startsWith(RUNS_OPTION)) {
+          runs = Integer.parseInt(arg.substring(RUNS_OPTION.length()));
+        } else if (arg.startsWith(PARALLELISM_OPTION)) {
+          parallelism = Integer.parseInt(arg.substring(PARALLELISM_OPTION.length()));
+        } else if (arg.equals("--no-hash")) {
+          checkHash = false;
+        } else if (arg.equals("--update-golden")) {
+          updateGolden = true;
+        } else if (arg.equals("--update-baseline")) {
+          updateBaseline = true;
+        } else if (arg.startsWith("--")) {
+          throw new IllegalArgumentException(arg);
+        } else {
+          directory = new File(arg);
+        }
+      }
+      if (tolerance < 0 || runs < 1 || parallelism < 1) {
+        throw new IllegalArgumentException("negative tolerance or no runs or threads");
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println("Invalid option: " + e.getMessage());
+      System.err.println("Usage: java Counter --regression [--golden=<file>] [--baseline=<file>]"
+        + " [--tolerance=<percent>] [--runs=<n>] [--parallelism=<n>] [--no-hash] [--update-golden]"
+        + " [--update-baseline] [<directory>]");
+      System.exit(2);
+      return;
+    }
+    if (goldenFile == null) {
+      goldenFile = new File(directory, "golden.properties");
+    }
+    if (!updateGolden && !goldenFile.isFile()) {
+      System.err.println("There are no golden values in " + goldenFile + ", store them with --update-golden");
+      System.exit(2);
+      return;
+    }
+
+    boolean passed;
+    StripExecutor stripExecutor = new StripExecutor(parallelism);
+    try {
+      List<Result> results = countImages(directory, runs, stripExecutor);
+      if (results.isEmpty()) {
+        System.err.println("No images found in " + directory);
+        System.exit(2);
+        return;
+      }
+      passed = checkGolden(results, goldenFile, checkHash, updateGolden);
+      passed &= checkThroughput(results, baselineFile, tolerance, updateBaseline);
+    } catch (IOException e) {
+      System.err.println("The regression check could not run: " + e.getMessage());
+      System.exit(2);
+      return;
+    } finally {
+      stripExecutor.shutdown();
+    }
+    System.out.println(passed ? "PASSED" : "FAILED");
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Counts the cells in every JPEG image of the directory, in name order. All the images are counted in rounds, so that
+   * the warm up rounds warm up the code for every image and a drift of the speed of the machine affects every image.
+   *
+   * @param directory     File; The directory of the sample images.
+   * @param runs          int; The number of measured counts per image, after the warm up counts.
+   * @param stripExecutor StripExecutor; The executor that processes the strips of an image.
+   * @return List of Result; Returns the count, hash and median milliseconds of every image.
+   * @throws IOException If an image cannot be read or its count differs between the rounds.
+   */
+  private static List<Result> countImages(File directory, int runs, StripExecutor stripExecutor) throws IOException {
+    File[] files = directory.listFiles((dir, name) -> name.toLowerCase(Locale.ROOT).endsWith(".jpg"));
+    List<Result> results = new ArrayList<>();
+    if (files == null) {
+      return results;
+    }
+    Arrays.sort(files);
+    GreyscaleImage[] images = new GreyscaleImage[files.length];
+    for (int i = 0; i < files.length; i++) {
+      BufferedImage bufferedImage = ImageIO.read(files[i]);
+      if (bufferedImage == null) {
+        throw new IOException(files[i] + " is not a supported image");
+      }
+      images[i] = GreyscaleImage.fromBufferedImage(bufferedImage);
+    }
+
+    int[] cells = new int[files.length];
+    String[] hashes = new String[files.length];
+    double[][] milliseconds = new double[files.length][runs];
+    for (int run = -WARMUP_RUNS; run < runs; run++) {
+      for (int i = 0; i < files.length; i++) {
+        GreyscaleImage copy = images[i].copy();
+        long start = System.nanoTime();
+        CellCountPipeline pipeline = new CellCountPipeline(copy);
+        pipeline.setStripExecutor(stripExecutor);
+        int count = pipeline.countCells();
+        long nanos = System.nanoTime() - start;
+        String hash = hash(pipeline.getImage());
+        if (hashes[i] != null && (count != cells[i] || !hash.equals(hashes[i]))) {
+          throw new IOException("the count of " + files[i] + " differs between runs");
+        }
+        cells[i] = count;
+        hashes[i] = hash;
+        if (run >= 0) {
+          milliseconds[i][run] = nanos / 1e6;
+        }
+      }
+    }
+    for (int i = 0; i < files.length; i++) {
+      Arrays.sort(milliseconds[i]);
+      results.add(new Result(files[i].getName(), cells[i], hashes[i], milliseconds[i][runs / 2]));
+    }
+    return results;
+  }
+
+  /**
+   * Compares the counts and hashes with the golden values, or stores them as the golden values.
+   *
+   * @param results    List of Result; The results of the images.
+   * @param goldenFile File; The properties file of the golden values.
+   * @param checkHash  boolean; Whether the hashes are compared as well as the counts.
+   * @param update     boolean; Whether the current values are stored instead of compared.
+   * @return boolean; Returns true if every value matches or the values were stored.
+   * @throws IOException If the golden values cannot be read or written.
+   */
+  private static boolean checkGolden(List<Result> results, File goldenFile, boolean checkHash, boolean update)
+    throws IOException {
+    if (update) {
+      Properties golden = new Properties();
+      for (Result result : results) {
+        golden.setProperty(result.name + CELLS_KEY, Integer.toString(result.cells));
+        golden.setProperty(result.name + HASH_KEY, result.hash);
+      }
+      store(golden, goldenFile, "The cell counts and CRC-32 hashes of the final labeled images");
+      System.out.println("Stored the golden values in " + goldenFile);
+      return true;
+    }
+
+    Properties golden = load(goldenFile);
+    boolean passed = true;
+    System.out.println("image,cells,golden cells,hash,golden hash,status");
+    for (Result result : results) {
+      String goldenCells = golden.getProperty(result.name + CELLS_KEY);
+      String goldenHash = golden.getProperty(result.name + HASH_KEY);
+      String status;
+      if (goldenCells == null) {
+        status = "NO GOLDEN VALUE";
+      } else if (Integer.parseInt(goldenCells.trim()) != result.cells) {
+        status = "COUNT CHANGED";
+      } else if (checkHash && goldenHash != null && !goldenHash.trim().equals(result.hash)) {
+        status = "IMAGE CHANGED";
+      } else {
+        status = "OK";
+      }
+      passed &= status.equals("OK");
+      System.out.println(result.name + "," + result.cells + "," + goldenCells + "," + result.hash + "," + goldenHash
+        + "," + status);
+    }
+    return passed;
+  }
+
+  /**
+   * Compares the throughput over all the images with the baseline, or stores the milliseconds as the baseline.
+   *
+   * @param results      List of Result; The results of the images.
+   * @param baselineFile File; The properties file of the baseline milliseconds.
+   * @param tolerance    double; The percentage by which the throughput may drop.
+   * @param update       boolean; Whether the current milliseconds are stored instead of compared.
+   * @return boolean; Returns true if the throughput has not dropped by more than the tolerance, or the baseline was
+   * stored.
+   * @throws IOException If the baseline cannot be read or written.
+   */
+  private static boolean checkThroughput(List<Result> results, File baselineFile, double tolerance, boolean update)
+    throws IOException {
+    if (update || !baselineFile.isFile()) {
+      Properties baseline = new Properties();
+      for (Result result : results) {
+        baseline.setProperty(result.name + MILLISECONDS_KEY, String.format(Locale.ROOT, "%.3f", result.milliseconds));
+      }
+      store(baseline, baselineFile, "The median milliseconds per image on this machine");
+      System.out.println("Stored the throughput baseline in " + baselineFile);
+      return true;
+    }
+
+    Properties baseline = load(baselineFile);
+    double milliseconds = 0;
+    double baselineMilliseconds = 0;
+    System.out.println("image,milliseconds,baseline milliseconds,change");
+    for (Result result : results) {
+      String value = baseline.getProperty(result.name + MILLISECONDS_KEY);
+      if (value == null) {
+        System.out.printf(Locale.ROOT, "%s,%.3f,,%n", result.name, result.milliseconds);
+        continue;
+      }
+      double baselineValue = Double.parseDouble(value.trim());
+      milliseconds += result.milliseconds;
+      baselineMilliseconds += baselineValue;
+      System.out.printf(Locale.ROOT, "%s,%.3f,%.3f,%+.1f%%%n", result.name, result.milliseconds, baselineValue,
+        100 * (result.milliseconds / baselineValue - 1));
+    }
+    if (milliseconds == 0) {
+      System.out.println("No baseline for these images");
+      return true;
+    }
+
+    // The throughput is the number of images per second, so it drops by p% when the time grows to 1 / (1 - p%).
+    double throughputChange = 100 * (baselineMilliseconds / milliseconds - 1);
+    boolean passed = throughputChange >= -tolerance;
+    System.out.printf(Locale.ROOT, "Throughput %.2f images/sec against %.2f in the baseline (%+.1f%%, tolerance %.1f%%)"
+      + "%n", results.size() * 1000 / milliseconds, results.size() * 1000 / baselineMilliseconds, throughputChange,
+      tolerance);
+    return passed;
+  }
+
+  /**
+   * Computes the CRC-32 of the pixels of an image.
+   *
+   * @param image GreyscaleImage; The image.
+   * @return String; Returns the CRC-32 as 8 hexadecimal digits.
+   */
+  private static String hash(GreyscaleImage image) {
+    CRC32 crc = new CRC32();
+    crc.update(image.getPixels());
+    return String.format(Locale.ROOT, "%08x", crc.getValue());
+  }
+
+  private static Properties load(File file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream input = new FileInputStream(file)) {
+      properties.load(input);
+    }
+    return properties;
+  }
+
+  /**
+   * Writes the properties sorted by key, so that the file only changes where the values change.
+   *
+   * @param properties Properties; The properties.
+   * @param file       File; The properties file.
+   * @param comment    String; The comment at the top of the file.
+   * @throws IOException If the file cannot be written.
+   */
+  private static void store(Properties properties, File file, String comment) throws IOException {
+    try (PrintWriter writer = new PrintWriter(file, StandardCharsets.ISO_8859_1)) {
+      writer.println("# " + comment);
+      for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+        writer.println(key + "=" + properties.getProperty(key));
+      }
+    }
+  }
+}
@@ -0,0 +1,45 @@
+import java.io.IOException;
+
+/**
+ * A source of the rows of an 8 bit greyscale image, so that an image can be processed without holding all of its
+ * pixels in memory. The rows are read from top to bottom and may be read again from the top for another pass.
+ */
+interface RowSource {
+  int getWidth();
+
+  int getHeight();
+
+  /**
+   * Reads the intensity values of a row of the image.
+   *
+   * @param y   int; The Y coordinate of the row.
+   * @param row byte[]; The array of the width of the image that the intensity values are written to.
+   * @throws IOException if the row cannot be read.
+   */
+  void readRow(int y, byte[] row) throws IOException;
+
+  /**
+   * Creates a row source that reads the rows of an image that is already in memory.
+   *
+   * @param image GreyscaleImage; The image whose rows are to be read.
+   * @return RowSource; Returns the row source of the image.
+   */
+  static RowSource of(GreyscaleImage image) {
+    return new RowSource() {
+      @Override
+      public int getWidth() {
+        return image.getWidth();
+      }
+
+      @Override
+      public int getHeight() {
+        return image.getHeight();
+      }
+
+      @Override
+      public void readRow(int y, byte[] row) {
+        System.arraycopy(image.getPixels(), y * image.getWidth(), row, 0, image.getWidth());
+      }
+    };
+  }
+}
@@ -0,0 +1,475 @@
+import java.util.Arrays;
+
+/**
+ * Stages of the image processing pipeline that rows are pushed through one at a time from top to bottom, each keeping
+ * only a small window of the rows that its kernel reaches. They are chained so that a row moves through all the
+ * stages while it is still in the cache, or so that an image that does not fit in memory can be processed.
+ * <p>
+ * A chain may start at any row of the image rather than the first. A stage then only computes the rows whose whole
+ * neighbourhood has been pushed to it, so every stage loses radius rows at the top and the bottom of the range it is
+ * given, except at the top and bottom of the image itself. Every row that is pushed on is identical to the same row of
+ * the stage applied to the whole image.
+ */
+final class RowStages {
+  /**
+   * The names of the stages of the fused passes in the order of the chains, which are the names that CellCountPipeline
+   * records for the same operations applied one by one. The histogram of the first pass belongs to the modified auto
+   * contrast, as it does when the operations are applied one by one.
+   */
+  static final String[] FUSED_STAGES = {"weighted median", "gaussian blur", "modified auto contrast",
+    "combined Sobel filters", "weighted median", "threshold"};
+  /**
+   * The index in FUSED_STAGES of the modified auto contrast, whose time includes the histogram of the first pass.
+   */
+  static final int AUTO_CONTRAST_STAGE = 2;
+
+  private RowStages() {
+  }
+
+  /**
+   * A stage that the greyscale rows of the image are pushed to from top to bottom, without gaps. The row may be
+   * changed by the stage and is reused by the caller after the call.
+   */
+  interface GreyscaleRowSink {
+    /**
+     * Pushes the next row.
+     *
+     * @param y   int; The Y coordinate of the row in the image.
+     * @param row byte[]; The intensity values of the row.
+     */
+    void push(int y, byte[] row);
+
+    /**
+     * Called after the last row has been pushed.
+     */
+    void finish();
+  }
+
+  /**
+   * A stage that the bit-packed binary rows of the image are pushed to from top to bottom, without gaps. The row is
+   * reused by the caller after the call.
+   */
+  interface BinaryRowSink {
+    /**
+     * Pushes the next row.
+     *
+     * @param y   int; The Y coordinate of the row in the image.
+     * @param row long[]; The packed pixels of the row, where bit x % 64 of word x / 64 holds pixel x.
+     */
+    void push(int y, long[] row);
+
+    /**
+     * Called after the last row has been pushed.
+     */
+    void finish();
+  }
+
+  /**
+   * Creates the stages of the weighted median filter and the gaussian blur that smooth the image before the histogram
+   * of the modified auto contrast is created.
+   *
+   * @param width      int; The width of the image.
+   * @param height     int; The height of the image.
+   * @param borderMode CellCountPipeline.borderModes; How the gaussian blur fills the pixels outside the image.
+   * @param next       GreyscaleRowSink; The stage that the smoothed rows are pushed to.
+   * @param timer      StageTimer; The timer of the stages of FUSED_STAGES, or null if they are not timed.
+   * @return GreyscaleRowSink; Returns the first stage.
+   */
+  static GreyscaleRowSink createSmoothingStages(int width, int height, CellCountPipeline.borderModes borderMode,
+                                                GreyscaleRowSink next, StageTimer timer) {
+    GreyscaleRowSink gaussian = time(timer, 1, new NeighbourhoodStage(width, height,
+      CellCountPipeline.createGaussianBlurFilter(borderMode), next));
+    return time(timer, 0, new NeighbourhoodStage(width, height, WeightedMedianFilter.createSortingNetwork(), gaussian));
+  }
+
+  /**
+   * Creates the stages that follow the histogram of the smoothed image: the modified auto contrast, the combined sobel
+   * filters, the weighted median filter and the threshold that creates the binary rows.
+   *
+   * @param width      int; The width of the image.
+   * @param height     int; The height of the image.
+   * @param borderMode CellCountPipeline.borderModes; How the combined sobel filters fill the pixels outside the image.
+   * @param contrast   LookupTable; The modified auto contrast.
+   * @param threshold  int; The lowest intensity of the foreground.
+   * @param next       BinaryRowSink; The stage that the binary rows are pushed to, whose time counts as the
+   *                   threshold.
+   * @param timer      StageTimer; The timer of the stages of FUSED_STAGES, or null if they are not timed.
+   * @return GreyscaleRowSink; Returns the first stage.
+   */
+  static GreyscaleRowSink createEdgeStages(int width, int height, CellCountPipeline.borderModes borderMode,
+                                           LookupTable contrast, int threshold, BinaryRowSink next,
+                                           StageTimer timer) {
+    GreyscaleRowSink binary = time(timer, 5, new ThresholdStage(width, threshold, next));
+    GreyscaleRowSink median = time(timer, 4, new NeighbourhoodStage(width, height,
+      WeightedMedianFilter.createSortingNetwork(), binary));
+    GreyscaleRowSink sobel = time(timer, 3, new NeighbourhoodStage(width, height,
+      CellCountPipeline.createCombinedSobelFilters(borderMode, CellCountPipeline.gradientMagnitudes.EXACT), median));
+    return time(timer, AUTO_CONTRAST_STAGE, new PointStage(contrast, sobel));
+  }
+
+  /**
+   * Wraps a stage so that the time spent in it is added to a stage of the timer, unless there is no timer.
+   *
+   * @param timer StageTimer; The timer, or null.
+   * @param stage int; The index of the stage in FUSED_STAGES.
+   * @param sink  GreyscaleRowSink; The stage.
+   * @return GreyscaleRowSink; Returns the timed stage, or the stage itself if there is no timer.
+   */
+  static GreyscaleRowSink time(StageTimer timer, int stage, GreyscaleRowSink sink) {
+    if (timer == null) {
+      return sink;
+    }
+    return new GreyscaleRowSink() {
+      @Override
+      public void push(int y, byte[] row) {
+        int previous = timer.enter(stage);
+        sink.push(y, row);
+        timer.exit(previous);
+      }
+
+      @Override
+      public void finish() {
+        int previous = timer.enter(stage);
+        sink.finish();
+        timer.exit(previous);
+      }
+    };
+  }
+
+  /**
+   * Creates the modified auto contrast from the histogram of the smoothed image.
+   *
+   * @param histogram long[]; The number of pixels of every intensity.
+   * @param sLow      double; The fraction of the pixels that are saturated at the low end.
+   * @param sHigh     double; The fraction of the pixels that are saturated at the high end.
+   * @return LookupTable; Returns the modified auto contrast.
+   */
+  static LookupTable createAutoContrast(long[] histogram, double sLow, double sHigh) {
+    long imageSize = 0;
+    for (long count : histogram) {
+      imageSize += count;
+    }
+    int[] limits = CellCountPipeline.findAutoContrastLimits(CellCountPipeline.createCumulativeHistogram(histogram),
+      imageSize, sLow, sHigh);
+    return LookupTable.autoContrast(limits[0], limits[1]);
+  }
+
+  /**
+   * Adds up the time spent in every stage of a chain, without the time of the stages that it pushes its rows to. The
+   * stage that is running is charged from the last time a row entered or left a stage, so every push costs two reads
+   * of the clock. A timer must only be used by the thread that pushes the rows of its chain.
+   */
+  static final class StageTimer {
+    private final long[] nanos;
+    private int stage = -1;
+    private long mark;
+
+    /**
+     * Constructor for the StageTimer class.
+     *
+     * @param nanos long[]; The time of every stage in nanoseconds, which the time of the chain is added to.
+     */
+    StageTimer(long[] nanos) {
+      this.nanos = nanos;
+    }
+
+    /**
+     * Charges the time since the last mark to the running stage and starts the given stage.
+     *
+     * @param next int; The index of the stage that starts.
+     * @return int; Returns the index of the stage that was running, or -1 if none was.
+     */
+    private int enter(int next) {
+      long now = System.nanoTime();
+      if (stage >= 0) {
+        nanos[stage] += now - mark;
+      }
+      int previous = stage;
+      stage = next;
+      mark = now;
+      return previous;
+    }
+
+    /**
+     * Charges the time since the last mark to the running stage and continues the stage that was running before it.
+     *
+     * @param previous int; The index of the stage that was running before, or -1 if none was.
+     */
+    private void exit(int previous) {
+      long now = System.nanoTime();
+      nanos[stage] += now - mark;
+      stage = previous;
+      mark = now;
+    }
+  }
+
+  /**
+   * Gets the first row that a stage can compute from the first row pushed to it.
+   *
+   * @param firstPushedRow int; The first row that has been pushed.
+   * @param radius         int; The number of rows above and below a pixel that the stage reads.
+   * @return int; Returns the first row whose neighbourhood is complete.
+   */
+  private static int getFirstRow(int firstPushedRow, int radius) {
+    return firstPushedRow == 0 ? 0 : firstPushedRow + radius;
+  }
+
+  /**
+   * Gets the row after the last row that a stage can compute once all rows have been pushed.
+   *
+   * @param lastPushedRow int; The last row that has been pushed.
+   * @param height        int; The height of the image.
+   * @param radius        int; The number of rows above and below a pixel that the stage reads.
+   * @return int; Returns the row after the last row whose neighbourhood is complete.
+   */
+  private static int getEndRow(int lastPushedRow, int height, int radius) {
+    return lastPushedRow == height - 1 ? height : lastPushedRow - radius + 1;
+  }
+
+  /**
+   * Applies a 3x3 filter to a rolling window of the widened rows above, at and below the row that is computed. Every
+   * pushed row is widened to int with its padding once, into the slot of the window that it replaces, and the kernel
+   * of the filter reads the three slots directly. The rows above and below the image are the rows of the window that
+   * the border mode maps them to, or a row that counts as 0 or is OUTSIDE, so the kernel sees the border of the image
+   * exactly where the whole image has it. All the rows are allocated once per stage, so nothing is allocated per row.
+   */
+  static class NeighbourhoodStage implements GreyscaleRowSink {
+    private static final int RADIUS = 1;
+    private final int width;
+    private final int height;
+    private final PaddedRowFilter filter;
+    private final GreyscaleRowSink next;
+    private final int[][] rows;
+    private final int[] outsideRow;
+    private final int[] output;
+    private final byte[] result;
+    private int lastPushedRow = -1;
+    private int nextRow;
+
+    /**
+     * Constructor for the NeighbourhoodStage class.
+     *
+     * @param width  int; The width of the image.
+     * @param height int; The height of the image.
+     * @param filter PaddedRowFilter; The 3x3 filter that is to be applied.
+     * @param next   GreyscaleRowSink; The stage that the result rows are pushed to.
+     */
+    NeighbourhoodStage(int width, int height, PaddedRowFilter filter, GreyscaleRowSink next) {
+      this.width = width;
+      this.height = height;
+      this.filter = filter;
+      this.next = next;
+      this.rows = new int[2 * RADIUS + 1][width + 2];
+      this.outsideRow = new int[width + 2];
+      this.output = new int[width];
+      this.result = new byte[width];
+      filter.fillOutsideRow(outsideRow);
+    }
+
+    @Override
+    public void push(int y, byte[] row) {
+      if (lastPushedRow < 0) {
+        nextRow = getFirstRow(y, RADIUS);
+      }
+      filter.widenRow(row, 0, width, rows[y % rows.length]);
+      lastPushedRow = y;
+      while (nextRow + RADIUS <= lastPushedRow && nextRow < height) {
+        computeRow(nextRow++);
+      }
+    }
+
+    @Override
+    public void finish() {
+      int endRow = getEndRow(lastPushedRow, height, RADIUS);
+      while (nextRow < endRow) {
+        computeRow(nextRow++);
+      }
+      next.finish();
+    }
+
+    /**
+     * Computes a row from the widened rows of the window.
+     *
+     * @param y int; The Y coordinate of the row.
+     */
+    private void computeRow(int y) {
+      filter.computeRow(getWidenedRow(y - 1), rows[y % rows.length], getWidenedRow(y + 1), output, width);
+      for (int x = 0; x < width; x++) {
+        result[x] = (byte) output[x];
+      }
+      next.push(y, result);
+    }
+
+    /**
+     * Gets the widened row above or below the row that is computed.
+     *
+     * @param y int; The Y coordinate of the row, from -1 to the height.
+     * @return int[]; Returns the row of the window that holds it, or the outside row.
+     */
+    private int[] getWidenedRow(int y) {
+      int sourceRow = filter.getSourceIndex(y, height);
+      return sourceRow < 0 ? outsideRow : rows[sourceRow % rows.length];
+    }
+  }
+
+  /**
+   * Replaces the intensity of every pixel by the intensity that a table maps it to, e.g. for the modified auto
+   * contrast.
+   */
+  static class PointStage implements GreyscaleRowSink {
+    private final LookupTable table;
+    private final GreyscaleRowSink next;
+
+    /**
+     * Constructor for the PointStage class.
+     *
+     * @param table LookupTable; The point operation, which may be composed of several point operations.
+     * @param next  GreyscaleRowSink; The stage that the result rows are pushed to.
+     */
+    PointStage(LookupTable table, GreyscaleRowSink next) {
+      this.table = table;
+      this.next = next;
+    }
+
+    @Override
+    public void push(int y, byte[] row) {
+      table.apply(row, 0, row.length);
+      next.push(y, row);
+    }
+
+    @Override
+    public void finish() {
+      next.finish();
+    }
+  }
+
+  /**
+   * Creates the binary rows by thresholding, where the pixels at or above the threshold are the foreground and set.
+   */
+  static class ThresholdStage implements GreyscaleRowSink {
+    private final int threshold;
+    private final BinaryRowSink next;
+    private final long[] result;
+
+    /**
+     * Constructor for the ThresholdStage class.
+     *
+     * @param width     int; The width of the image.
+     * @param threshold int; The lowest intensity of the foreground.
+     * @param next      BinaryRowSink; The stage that the binary rows are pushed to.
+     */
+    ThresholdStage(int width, int threshold, BinaryRowSink next) {
+      this.threshold = threshold;
+      this.next = next;
+      this.result = new long[(width + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    @Override
+    public void push(int y, byte[] row) {
+      if (CellCountPipeline.SIMD_KERNELS != null) {
+        CellCountPipeline.SIMD_KERNELS.threshold(row, threshold, result);
+        next.push(y, result);
+        return;
+      }
+
+      Arrays.fill(result, 0L);
+      for (int x = 0; x < row.length; x++) {
+        if ((row[x] & 0xFF) >= threshold) {
+          result[x >>> 6] |= 1L << x;
+        }
+      }
+      next.push(y, result);
+    }
+
+    @Override
+    public void finish() {
+      next.finish();
+    }
+  }
+
+  /**
+   * Dilates or erodes a rolling window of bit-packed rows with the shifted rows of the structuring element, exactly as
+   * BinaryMorphology does for the whole image.
+   */
+  static class MorphingStage implements BinaryRowSink {
+    private final int height;
+    private final int[][] offsets;
+    private final int radius;
+    private final boolean erode;
+    private final BinaryRowSink next;
+    private final long[][] rows;
+    private final long[] result;
+    private final int wordsPerRow;
+    private final long lastWordMask;
+    private int lastPushedRow = -1;
+    private int nextRow;
+
+    /**
+     * Constructor for the MorphingStage class.
+     *
+     * @param width   int; The width of the image.
+     * @param height  int; The height of the image.
+     * @param element StructuringElement; The structuring element.
+     * @param erode   boolean; True to erode, false to dilate.
+     * @param next    BinaryRowSink; The stage that the result rows are pushed to.
+     */
+    MorphingStage(int width, int height, StructuringElement element, boolean erode, BinaryRowSink next) {
+      this.height = height;
+      this.offsets = element.getOffsets();
+      this.radius = element.getRadius();
+      this.erode = erode;
+      this.next = next;
+      this.wordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+      this.rows = new long[2 * radius + 1][wordsPerRow];
+      this.result = new long[wordsPerRow];
+      int remainder = width % Long.SIZE;
+      this.lastWordMask = remainder == 0 ? -1L : (1L << remainder) - 1;
+    }
+
+    @Override
+    public void push(int y, long[] row) {
+      if (lastPushedRow < 0) {
+        nextRow = getFirstRow(y, radius);
+      }
+      long[] window = rows[y % rows.length];
+      for (int k = 0; k < wordsPerRow; k++) {
+        // An erosion is the inverse of the dilation of the inverse.
+        window[k] = erode ? ~row[k] : row[k];
+      }
+      window[wordsPerRow - 1] &= lastWordMask;
+      lastPushedRow = y;
+      while (nextRow + radius <= lastPushedRow && nextRow < height) {
+        computeRow(nextRow++);
+      }
+    }
+
+    @Override
+    public void finish() {
+      int endRow = getEndRow(lastPushedRow, height, radius);
+      while (nextRow < endRow) {
+        computeRow(nextRow++);
+      }
+      next.finish();
+    }
+
+    /**
+     * Computes a row from the rows of the window that are within the image.
+     *
+     * @param y int; The Y coordinate of the row.
+     */
+    private void computeRow(int y) {
+      Arrays.fill(result, 0L);
+      for (int[] offset : offsets) {
+        int sourceRow = y - offset[1];
+        if (sourceRow >= 0 && sourceRow < height) {
+          BinaryMorphology.orShiftedRow(rows[sourceRow % rows.length], 0, result, 0, wordsPerRow, offset[0]);
+        }
+      }
+      for (int k = 0; k < wordsPerRow; k++) {
+        result[k] = erode ? ~result[k] : result[k];
+      }
+      result[wordsPerRow - 1] &= lastWordMask;
+      next.push(y, result);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * The vectorized implementations of the 3x3 linear filters and the threshold, which process a full SIMD register of
+ * pixels at once. They are implemented by VectorKernels with the incubating Java Vector API, which is only available
+ * when the program is started with --add-modules jdk.incubator.vector. VectorKernels lives in the vector directory and
+ * is compiled on its own, so that the rest of the program compiles and runs without the module and falls back to the
+ * scalar implementations. Every vectorized result is identical to the scalar result.
+ */
+interface SimdKernels {
+  /**
+   * Creates a 3x3 smoothing filter.
+   *
+   * @param weight     int; The positive divisor of the weighted sum.
+   * @param filter     int[][]; The non negative weights, where filter[1 + i][1 + j] is the weight of pixel
+   *                   (x + i, y + j).
+   * @param borderMode CellCountPipeline.borderModes; How the pixels outside the image are filled.
+   * @return PaddedRowFilter; Returns the smoothing filter, or null if it cannot be vectorized exactly.
+   */
+  PaddedRowFilter createSmoothingFilter(int weight, int[][] filter, CellCountPipeline.borderModes borderMode);
+
+  /**
+   * Creates the combined Sobel filters, whose result is the truncated gradient magnitude sqrt(sobelX^2 + sobelY^2).
+   *
+   * @param borderMode CellCountPipeline.borderModes; How the pixels outside the image are filled.
+   * @return PaddedRowFilter; Returns the combined Sobel filters.
+   */
+  PaddedRowFilter createCombinedSobelFilters(CellCountPipeline.borderModes borderMode);
+
+  /**
+   * Creates the Laplace filter, which is 8 times the pixel minus its 8 neighbours.
+   *
+   * @param borderMode CellCountPipeline.borderModes; How the pixels outside the image are filled.
+   * @return PaddedRowFilter; Returns the Laplace filter.
+   */
+  PaddedRowFilter createLaplaceFilter(CellCountPipeline.borderModes borderMode);
+
+  /**
+   * Sets the bits of the pixels of a row whose intensity is at or above the threshold and clears the others.
+   *
+   * @param row       byte[]; The intensities of the row.
+   * @param threshold int; The lowest intensity whose bit is set.
+   * @param words     long[]; The packed bits of the row, where bit x % 64 of word x / 64 holds pixel x.
+   */
+  void threshold(byte[] row, int threshold, long[] words);
+
+  /**
+   * Gets a description of the vector shape that was chosen for the running CPU, which is printed when the kernels are
+   * loaded.
+   *
+   * @return String; Returns the number of lanes of the vectors.
+   */
+  String getDescription();
+
+  /**
+   * Loads VectorKernels if it has been compiled and the Java Vector API is available on the running JVM, and prints
+   * the vector shape that it uses to standard error. Nothing is printed when the scalar kernels are used.
+   *
+   * @return SimdKernels; Returns the vectorized kernels, or null if the scalar kernels must be used.
+   */
+  static SimdKernels load() {
+    try {
+      SimdKernels kernels = (SimdKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+      System.err.println("Using the vectorized kernels with " + kernels.getDescription());
+      return kernels;
+    } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,198 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps snapshots of the images after the operations of the image processing pipeline, e.g. to display them in the GUI
+ * once the cells have been counted. The snapshot policy decides which images are kept: NONE keeps none, FINAL_ONLY
+ * keeps the image after the last operation, THUMBNAIL keeps a downsampled copy of every image and FULL keeps a full
+ * copy of every image.
+ * <p>
+ * The snapshots are kept as 8 bit greyscale pixels, a quarter of the size of an RGB image, and are only wrapped in a
+ * BufferedImage when they are displayed, without copying the pixels again. The snapshots are limited to the given
+ * number of bytes, and the oldest snapshots are dropped when a new one does not fit, so the image after the last
+ * operation is always kept.
+ */
+public class StageSnapshots implements CellCountPipeline.StageListener {
+  /**
+   * The default number of bytes of the snapshots that are kept.
+   */
+  public static final long DEFAULT_MAX_BYTES = 256L << 20;
+  /**
+   * The default size of the longer side of a thumbnail.
+   */
+  public static final int DEFAULT_THUMBNAIL_SIZE = 256;
+  private final snapshotPolicies policy;
+  private final long maxBytes;
+  private final int thumbnailSize;
+  private final ArrayDeque<Snapshot> snapshots = new ArrayDeque<>();
+  private long retainedBytes;
+  private int dropped;
+
+  enum snapshotPolicies {NONE, FINAL_ONLY, THUMBNAIL, FULL}
+
+  /**
+   * An 8 bit greyscale snapshot of the image after an operation.
+   */
+  static final class Snapshot {
+    private final String label;
+    private final int width;
+    private final int height;
+    private final byte[] pixels;
+
+    private Snapshot(String label, int width, int height, byte[] pixels) {
+      this.label = label;
+      this.width = width;
+      this.height = height;
+      this.pixels = pixels;
+    }
+
+    String getLabel() {
+      return label;
+    }
+
+    int getWidth() {
+      return width;
+    }
+
+    int getHeight() {
+      return height;
+    }
+
+    /**
+     * Wraps the pixels of the snapshot in an 8 bit greyscale BufferedImage, which shares them with the snapshot.
+     *
+     * @return BufferedImage; Returns the TYPE_BYTE_GRAY image of the snapshot.
+     */
+    BufferedImage toBufferedImage() {
+      ColorModel colorModel = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY).getColorModel();
+      WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(pixels, pixels.length), width, height,
+        width, 1, new int[]{0}, null);
+      return new BufferedImage(colorModel, raster, false, null);
+    }
+  }
+
+  /**
+   * Constructor for the StageSnapshots class with the default limit and thumbnail size.
+   *
+   * @param policy snapshotPolicies (enum); Which images are kept.
+   */
+  public StageSnapshots(snapshotPolicies policy) {
+    this(policy, DEFAULT_MAX_BYTES, DEFAULT_THUMBNAIL_SIZE);
+  }
+
+  /**
+   * Constructor for the StageSnapshots class.
+   *
+   * @param policy        snapshotPolicies (enum); Which images are kept.
+   * @param maxBytes      long; The maximum number of bytes of the pixels of the snapshots.
+   * @param thumbnailSize int; The maximum width and height of a THUMBNAIL snapshot.
+   */
+  public StageSnapshots(snapshotPolicies policy, long maxBytes, int thumbnailSize) {
+    if (maxBytes < 0 || thumbnailSize < 1) {
+      throw new IllegalArgumentException("Invalid snapshot limits: " + maxBytes + " bytes, " + thumbnailSize
+        + " pixels");
+    }
+    this.policy = policy;
+    this.maxBytes = maxBytes;
+    this.thumbnailSize = thumbnailSize;
+  }
+
+  /**
+   * Checks whether the snapshots need the image after every operation. Otherwise the pipeline can run without a
+   * listener and only the image after the last operation is passed to the snapshots.
+   *
+   * @return boolean; Returns true if the policy is THUMBNAIL or FULL.
+   */
+  boolean needsEveryStage() {
+    return policy == snapshotPolicies.THUMBNAIL || policy == snapshotPolicies.FULL;
+  }
+
+  @Override
+  public void stageCompleted(String label, GreyscaleImage image) {
+    if (policy == snapshotPolicies.NONE) {
+      return;
+    }
+    if (policy == snapshotPolicies.FINAL_ONLY) {
+      while (!snapshots.isEmpty()) {
+        retainedBytes -= snapshots.removeFirst().pixels.length;
+      }
+    }
+    Snapshot snapshot = policy == snapshotPolicies.THUMBNAIL ? createThumbnail(label, image)
+      : new Snapshot(label, image.getWidth(), image.getHeight(), image.getPixels().clone());
+    while (!snapshots.isEmpty() && retainedBytes + snapshot.pixels.length > maxBytes) {
+      retainedBytes -= snapshots.removeFirst().pixels.length;
+      dropped++;
+    }
+    snapshots.addLast(snapshot);
+    retainedBytes += snapshot.pixels.length;
+  }
+
+  /**
+   * Creates a thumbnail of the image, where every pixel is the mean of a square block of pixels of the image, so that
+   * the width and height of the thumbnail are at most the thumbnail size.
+   *
+   * @param label String; The label of the snapshot.
+   * @param image GreyscaleImage; The image.
+   * @return Snapshot; Returns the thumbnail.
+   */
+  private Snapshot createThumbnail(String label, GreyscaleImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int factor = Math.max(1, (Math.max(width, height) + thumbnailSize - 1) / thumbnailSize);
+    int thumbnailWidth = (width + factor - 1) / factor;
+    int thumbnailHeight = (height + factor - 1) / factor;
+    byte[] pixels = image.getPixels();
+    byte[] thumbnail = new byte[thumbnailWidth * thumbnailHeight];
+    int[] sums = new int[thumbnailWidth];
+    for (int ty = 0; ty < thumbnailHeight; ty++) {
+      Arrays.fill(sums, 0);
+      int fromRow = ty * factor;
+      int toRow = Math.min(height, fromRow + factor);
+      for (int y = fromRow; y < toRow; y++) {
+        int offset = y * width;
+        for (int x = 0; x < width; x++) {
+          sums[x / factor] += pixels[offset + x] & 0xFF;
+        }
+      }
+      for (int tx = 0; tx < thumbnailWidth; tx++) {
+        int blockWidth = Math.min(width, (tx + 1) * factor) - tx * factor;
+        int blockSize = blockWidth * (toRow - fromRow);
+        thumbnail[ty * thumbnailWidth + tx] = (byte) ((sums[tx] + blockSize / 2) / blockSize);
+      }
+    }
+    return new Snapshot(label, thumbnailWidth, thumbnailHeight, thumbnail);
+  }
+
+  /**
+   * Gets the snapshots that are kept.
+   *
+   * @return List of Snapshot; Returns the snapshots in the order of the operations.
+   */
+  List<Snapshot> getSnapshots() {
+    return new ArrayList<>(snapshots);
+  }
+
+  /**
+   * Gets the number of snapshots that were dropped to stay within the maximum number of bytes.
+   *
+   * @return int; Returns the number of dropped snapshots.
+   */
+  int getDropped() {
+    return dropped;
+  }
+
+  public long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  public snapshotPolicies getPolicy() {
+    return policy;
+  }
+}
@@ -0,0 +1,299 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Counts the cells in a list of images in three overlapping stages, so that reading and decoding the files and encoding
+ * and writing the output images overlap with counting instead of adding to it. The images are read and decoded on
+ * virtual threads, the cells are counted on a fixed pool of one platform thread per processor that is to be used, and
+ * the overlay images are encoded and written on virtual threads again. Every stage hands its images to the next one
+ * through a bounded queue: a decoder waits while the queue of decoded images is full and a counting thread waits while
+ * the queue of images to be written is full, so slow storage cannot fill the memory with decoded images and a slow
+ * encoder cannot fill it with results. An image that fails in any stage, even by running out of memory, completes
+ * its result exceptionally and gives up its places in the queues. Every counting thread keeps its own BufferPool, so
+ * the consecutive images of the same size that it counts reuse the same planes.
+ */
+public class StagedBatchExecutor {
+  private static final int OVERLAY_COLOR = 0xFF0000;
+
+  private final ExecutorService ioExecutor = newVirtualThreadExecutor();
+  private final ExecutorService computeExecutor;
+  private final Semaphore decodeQueue;
+  private final Semaphore writeQueue;
+  private final File outputDirectory;
+  private final PipelineMetrics metrics;
+  private final CellCountPipeline.borderModes borderMode;
+  private final List<BufferPool> bufferPools = Collections.synchronizedList(new ArrayList<>());
+  private final ThreadLocal<BufferPool> bufferPool = ThreadLocal.withInitial(() -> {
+    BufferPool bufferPool = new BufferPool();
+    bufferPools.add(bufferPool);
+    return bufferPool;
+  });
+
+  /**
+   * Creates an executor with the given number of counting threads and bounded queues between the stages.
+   *
+   * @param threads         int; The number of platform threads that count the cells.
+   * @param queueCapacity   int; The number of decoded images that may wait to be counted, and of counted images that
+   *                        may wait to be written.
+   * @param outputDirectory File; The directory that the overlay of the cells found on every image is written to, or
+   *                        null if no images are to be written.
+   * @param metrics         PipelineMetrics; The metrics that the stages of the pipelines are recorded in, or null.
+   * @param borderMode      CellCountPipeline.borderModes; How the linear filters fill the pixels outside the images.
+   */
+  public StagedBatchExecutor(int threads, int queueCapacity, File outputDirectory, PipelineMetrics metrics,
+                             CellCountPipeline.borderModes borderMode) {
+    this.computeExecutor = Executors.newFixedThreadPool(threads);
+    // A decoded image holds a permit from the start of its decode until its count ends, so the permits cover the
+    // images being counted as well as the ones queued for a counting thread.
+    this.decodeQueue = new Semaphore(queueCapacity + threads);
+    this.writeQueue = new Semaphore(queueCapacity);
+    this.outputDirectory = outputDirectory;
+    this.metrics = metrics;
+    this.borderMode = borderMode;
+  }
+
+  /**
+   * Creates an executor that starts a virtual thread for every task, or a cached thread pool if the running Java
+   * version has no virtual threads. The method is looked up at runtime, so the class still compiles for Java 17.
+   *
+   * @return ExecutorService; Returns the executor for the blocking reads and writes.
+   */
+  static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Starts counting the cells in the given images. The images are fed to the decoders in the order they were given, as
+   * fast as the queue of decoded images allows, and the method returns without waiting for them.
+   *
+   * @param files List of File; The 8 bit greyscale images of cells.
+   * @return List of CompletableFuture of String; Returns the CSV row of every image, in the order they were given,
+   * which completes exceptionally if the image cannot be read or counted or its overlay cannot be written.
+   */
+  public List<CompletableFuture<String>> submit(List<File> files) {
+    List<CompletableFuture<String>> results = new ArrayList<>();
+    for (int i = 0; i < files.size(); i++) {
+      results.add(new CompletableFuture<>());
+    }
+    ioExecutor.execute(() -> {
+      for (int i = 0; i < files.size(); i++) {
+        try {
+          decodeQueue.acquire();
+        } catch (InterruptedException e) {
+          for (int j = i; j < files.size(); j++) {
+            results.get(j).completeExceptionally(new IllegalStateException("the batch was shut down"));
+          }
+          return;
+        }
+        File file = files.get(i);
+        CompletableFuture<String> result = results.get(i);
+        ioExecutor.execute(() -> decode(file, result));
+      }
+    });
+    return results;
+  }
+
+  /**
+   * Reads and decodes the given image on a virtual thread and queues it to be counted.
+   *
+   * @param file   File; The 8 bit greyscale image of cells.
+   * @param result CompletableFuture of String; The CSV row of the image.
+   */
+  private void decode(File file, CompletableFuture<String> result) {
+    long start = System.nanoTime();
+    GreyscaleImage image;
+    try {
+      BufferedImage bufferedImage = ImageIO.read(file);
+      if (bufferedImage == null) {
+        throw new IOException("not a supported image");
+      }
+      image = GreyscaleImage.fromBufferedImage(bufferedImage);
+    } catch (Throwable e) {
+      // Errors such as running out of memory fail the image too, so that nobody waits for it forever.
+      decodeQueue.release();
+      result.completeExceptionally(e);
+      return;
+    }
+    long decodeNanos = System.nanoTime() - start;
+    try {
+      computeExecutor.execute(() -> count(file, image, decodeNanos, result));
+    } catch (RejectedExecutionException e) {
+      decodeQueue.release();
+      result.completeExceptionally(new IllegalStateException("the batch was shut down"));
+    }
+  }
+
+  /**
+   * Counts the cells in the given image on a counting thread and queues the overlay to be written, if there is an
+   * output directory.
+   *
+   * @param file        File; The image of cells.
+   * @param image       GreyscaleImage; The decoded image of cells.
+   * @param decodeNanos long; The time taken to read and decode the image in nanoseconds.
+   * @param result      CompletableFuture of String; The CSV row of the image.
+   */
+  private void count(File file, GreyscaleImage image, long decodeNanos, CompletableFuture<String> result) {
+    long start = System.nanoTime();
+    GreyscaleImage original;
+    int count;
+    GreyscaleImage cells;
+    try {
+      original = outputDirectory == null ? null : image.copy();
+      CellCountPipeline pipeline = new CellCountPipeline(image);
+      pipeline.setBufferPool(bufferPool.get());
+      pipeline.setBorderMode(borderMode);
+      if (metrics != null) {
+        pipeline.setMetrics(metrics, file.getPath());
+      }
+      count = pipeline.countCells();
+      cells = pipeline.getImage();
+    } catch (Throwable e) {
+      result.completeExceptionally(e);
+      return;
+    } finally {
+      decodeQueue.release();
+    }
+
+    long nanos = decodeNanos + System.nanoTime() - start;
+    if (outputDirectory == null) {
+      result.complete(formatRow(file, image, count, nanos));
+      return;
+    }
+    try {
+      writeQueue.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.completeExceptionally(new IllegalStateException("the batch was shut down"));
+      return;
+    }
+    try {
+      ioExecutor.execute(() -> write(file, original, cells, count, nanos, result));
+    } catch (RejectedExecutionException e) {
+      writeQueue.release();
+      result.completeExceptionally(new IllegalStateException("the batch was shut down"));
+    }
+  }
+
+  /**
+   * Encodes the overlay of the cells found on the original image and writes it to the output directory on a virtual
+   * thread.
+   *
+   * @param file     File; The image of cells.
+   * @param original GreyscaleImage; The image of cells as it was read.
+   * @param cells    GreyscaleImage; The image after the region labeling, where the cells are black.
+   * @param count    int; The number of cells found in the image.
+   * @param nanos    long; The time taken to read, decode and count the image in nanoseconds.
+   * @param result   CompletableFuture of String; The CSV row of the image.
+   */
+  private void write(File file, GreyscaleImage original, GreyscaleImage cells, int count, long nanos,
+                     CompletableFuture<String> result) {
+    long start = System.nanoTime();
+    try {
+      String name = file.getName();
+      int dot = name.lastIndexOf('.');
+      File outputFile = new File(outputDirectory, (dot > 0 ? name.substring(0, dot) : name) + "-output.png");
+      ImageIO.write(createOverlay(original, cells), "png", outputFile);
+      result.complete(formatRow(file, original, count, nanos + System.nanoTime() - start));
+    } catch (Throwable e) {
+      result.completeExceptionally(e);
+    } finally {
+      writeQueue.release();
+    }
+  }
+
+  /**
+   * Creates an RGB image of the original image where the pixels of the cells are tinted red.
+   *
+   * @param original GreyscaleImage; The image of cells as it was read.
+   * @param cells    GreyscaleImage; The image after the region labeling, where the cells are black.
+   * @return BufferedImage; Returns the overlay of the cells on the original image.
+   */
+  static BufferedImage createOverlay(GreyscaleImage original, GreyscaleImage cells) {
+    int width = original.getWidth();
+    int height = original.getHeight();
+    byte[] originalPixels = original.getPixels();
+    byte[] cellPixels = cells.getPixels();
+    BufferedImage overlay = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        int intensity = originalPixels[offset + x] & 0xFF;
+        int grey = (intensity << 16) | (intensity << 8) | intensity;
+        // Half of the cell colour is mixed in, so the texture of the cells stays visible under the tint.
+        row[x] = cellPixels[offset + x] == 0 ? ((grey >> 1) & 0x7F7F7F) + ((OVERLAY_COLOR >> 1) & 0x7F7F7F) : grey;
+      }
+      overlay.setRGB(0, y, width, 1, row, 0, width);
+    }
+    return overlay;
+  }
+
+  /**
+   * Formats the CSV row of an image.
+   *
+   * @param file  File; The image of cells.
+   * @param image GreyscaleImage; An image with the size of the image of cells.
+   * @param count int; The number of cells found in the image.
+   * @param nanos long; The time spent on the image in the stages, without the time it waited in the queues.
+   * @return String; Returns the file name, the image size, the number of cells and the time taken in milliseconds.
+   */
+  private static String formatRow(File file, GreyscaleImage image, int count, long nanos) {
+    return file.getPath() + "," + image.getWidth() + "," + image.getHeight() + "," + count + "," + nanos / 1000000;
+  }
+
+  /**
+   * Gets the number of image planes that the counting threads took from their buffer pools instead of allocating.
+   *
+   * @return long; Returns the number of reused planes.
+   */
+  public long getBufferHits() {
+    long hits = 0;
+    synchronized (bufferPools) {
+      for (BufferPool pool : bufferPools) {
+        hits += pool.getHits();
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * Gets the number of image planes that the counting threads had to allocate.
+   *
+   * @return long; Returns the number of allocated planes.
+   */
+  public long getBufferAllocations() {
+    long allocations = 0;
+    synchronized (bufferPools) {
+      for (BufferPool pool : bufferPools) {
+        allocations += pool.getAllocations();
+      }
+    }
+    return allocations;
+  }
+
+  /**
+   * Stops the threads of all the stages, interrupting the images that are still being processed.
+   */
+  public void shutdown() {
+    ioExecutor.shutdownNow();
+    computeExecutor.shutdownNow();
+  }
+}
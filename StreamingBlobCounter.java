@@ -0,0 +1,199 @@
+/**
+ * Counts the 4-connected blobs of set pixels of a bit-packed binary image whose rows are pushed one at a time from top
+ * to bottom, holding only the runs of set pixels of the previous row.
+ * <p>
+ * Every run of the new row starts as a blob of its own and is merged, with union-find, with the blobs of the runs of
+ * the previous row that it overlaps. A blob of the previous row that no run of the new row belongs to is closed, as it
+ * cannot grow any further, and is counted if it is at least as large as the minimum area. The blobs that are still
+ * open are then renumbered from 0, so the memory needed depends only on the width of the image.
+ */
+public class StreamingBlobCounter {
+  private final int width;
+  private final int minArea;
+  private int[] previousStarts;
+  private int[] previousEnds;
+  private int[] previousBlobs;
+  private long[] previousAreas;
+  private int previousRuns;
+  private int previousBlobCount;
+  private int[] starts;
+  private int[] ends;
+  private int[] parents;
+  private long[] areas;
+  private boolean[] open;
+  private int[] renumbered;
+  private int count;
+
+  /**
+   * Constructor for the StreamingBlobCounter class.
+   *
+   * @param width   int; The width of the image in pixels.
+   * @param minArea int; The minimum number of pixels of a blob that is counted.
+   */
+  public StreamingBlobCounter(int width, int minArea) {
+    this.width = width;
+    this.minArea = minArea;
+    // A row has at most (width + 1) / 2 runs, as the runs are separated by at least one unset pixel.
+    int maxRuns = (width + 1) / 2;
+    previousStarts = new int[maxRuns];
+    previousEnds = new int[maxRuns];
+    previousBlobs = new int[maxRuns];
+    previousAreas = new long[maxRuns];
+    starts = new int[maxRuns];
+    ends = new int[maxRuns];
+    parents = new int[2 * maxRuns];
+    areas = new long[2 * maxRuns];
+    open = new boolean[2 * maxRuns];
+    renumbered = new int[2 * maxRuns];
+  }
+
+  /**
+   * Adds the next row of the image.
+   *
+   * @param row long[]; The packed pixels of the row, where bit x % 64 of word x / 64 holds pixel x.
+   */
+  public void push(long[] row) {
+    int runs = findRuns(row);
+
+    // The blobs of the previous row are 0 to previousBlobCount - 1 and the runs of the new row follow them.
+    int nodes = previousBlobCount + runs;
+    for (int node = 0; node < nodes; node++) {
+      parents[node] = node;
+      open[node] = false;
+    }
+    System.arraycopy(previousAreas, 0, areas, 0, previousBlobCount);
+    for (int run = 0; run < runs; run++) {
+      areas[previousBlobCount + run] = ends[run] - starts[run] + 1;
+    }
+
+    int previousRun = 0;
+    for (int run = 0; run < runs; run++) {
+      while (previousRun < previousRuns && previousEnds[previousRun] < starts[run]) {
+        previousRun++;
+      }
+      for (int i = previousRun; i < previousRuns && previousStarts[i] <= ends[run]; i++) {
+        union(previousBlobs[i], previousBlobCount + run);
+      }
+    }
+
+    for (int run = 0; run < runs; run++) {
+      open[find(previousBlobCount + run)] = true;
+    }
+    for (int blob = 0; blob < previousBlobCount; blob++) {
+      if (parents[blob] == blob && !open[blob] && areas[blob] >= minArea) {
+        count++;
+      }
+    }
+
+    int blobCount = 0;
+    for (int node = 0; node < nodes; node++) {
+      renumbered[node] = -1;
+    }
+    for (int run = 0; run < runs; run++) {
+      int root = find(previousBlobCount + run);
+      if (renumbered[root] < 0) {
+        renumbered[root] = blobCount;
+        previousAreas[blobCount] = areas[root];
+        blobCount++;
+      }
+      previousStarts[run] = starts[run];
+      previousEnds[run] = ends[run];
+      previousBlobs[run] = renumbered[root];
+    }
+    previousRuns = runs;
+    previousBlobCount = blobCount;
+  }
+
+  /**
+   * Closes the blobs that reach the last row of the image, after which no more rows can be added.
+   *
+   * @return int; Returns the number of blobs that are at least as large as the minimum area.
+   */
+  public int finish() {
+    for (int blob = 0; blob < previousBlobCount; blob++) {
+      if (previousAreas[blob] >= minArea) {
+        count++;
+      }
+    }
+    previousRuns = 0;
+    previousBlobCount = 0;
+    return count;
+  }
+
+  /**
+   * Gets the number of blobs that have been closed so far and are at least as large as the minimum area.
+   *
+   * @return int; Returns the number of blobs counted so far.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Finds the runs of set pixels of a row, skipping the words where no pixel is set.
+   *
+   * @param row long[]; The packed pixels of the row.
+   * @return int; Returns the number of runs, whose first and last X coordinates are stored in starts and ends.
+   */
+  private int findRuns(long[] row) {
+    int runs = 0;
+    int x = 0;
+    while (x < width) {
+      long word = row[x >>> 6] >>> x;
+      if (word == 0) {
+        x = ((x >>> 6) + 1) << 6;
+        continue;
+      }
+      x += Long.numberOfTrailingZeros(word);
+      int start = x;
+      while (x < width) {
+        long unset = ~row[x >>> 6] >>> x;
+        if (unset == 0) {
+          x = ((x >>> 6) + 1) << 6;
+          continue;
+        }
+        x += Long.numberOfTrailingZeros(unset);
+        break;
+      }
+      x = Math.min(x, width);
+      starts[runs] = start;
+      ends[runs] = x - 1;
+      runs++;
+    }
+    return runs;
+  }
+
+  /**
+   * Finds the root of the tree of a blob, pointing every blob on the way directly at the root.
+   *
+   * @param node int; The blob.
+   * @return int; Returns the root of the blob.
+   */
+  private int find(int node) {
+    int root = node;
+    while (parents[root] != root) {
+      root = parents[root];
+    }
+    while (parents[node] != root) {
+      int parent = parents[node];
+      parents[node] = root;
+      node = parent;
+    }
+    return root;
+  }
+
+  /**
+   * Merges two blobs, adding up their areas.
+   *
+   * @param a int; The first blob.
+   * @param b int; The second blob.
+   */
+  private void union(int a, int b) {
+    int rootA = find(a);
+    int rootB = find(b);
+    if (rootA != rootB) {
+      parents[rootB] = rootA;
+      areas[rootA] += areas[rootB];
+    }
+  }
+}
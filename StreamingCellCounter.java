@@ -0,0 +1,114 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Counts the cells of an image with the same operations as CellCountPipeline.countCells, but pushes the rows of the
+ * image through the pipeline one at a time, so that images larger than the heap can be counted. Every stage keeps only
+ * a rolling window of the rows of its kernel, so the memory needed grows with the width of the image and the height of
+ * the kernels but not with the height of the image.
+ * <p>
+ * The neighbourhood stages run the kernels of the pipeline on a rolling window of widened rows, with the pixels
+ * outside the image filled by the same border mode, so every row is identical to the row of the whole image. The
+ * modified auto contrast needs the histogram of the whole image after the gaussian blur, so the image is read twice:
+ * the first pass only creates the histogram and the second pass runs the whole pipeline. The morphing operations work
+ * on windows of bit-packed rows, and the blobs are counted as they close by a StreamingBlobCounter.
+ */
+public class StreamingCellCounter {
+  private static final int THRESHOLD = 65;
+  private static final int MIN_BLOB_SIZE = 92;
+  private static final double S_LOW = 0.65;
+  private static final double S_HIGH = 0.01;
+
+  private StreamingCellCounter() {
+  }
+
+  /**
+   * Counts the cells in an image file, reading it in bands of rows.
+   *
+   * @param file       File; The 8 bit greyscale image of cells.
+   * @param borderMode CellCountPipeline.borderModes; How the linear filters fill the pixels outside the image.
+   * @return int; Returns the number of distinct cells found in the image.
+   * @throws IOException if the image cannot be read.
+   */
+  public static int countCells(File file, CellCountPipeline.borderModes borderMode) throws IOException {
+    try (ImageRowSource source = new ImageRowSource(file)) {
+      return countCells(source, borderMode);
+    }
+  }
+
+  /**
+   * Counts the cells in an image whose rows are read from the row source, reading every row twice.
+   *
+   * @param source     RowSource; The source of the rows of the 8 bit greyscale image of cells.
+   * @param borderMode CellCountPipeline.borderModes; How the linear filters fill the pixels outside the image.
+   * @return int; Returns the number of distinct cells found in the image.
+   * @throws IOException if a row cannot be read.
+   */
+  static int countCells(RowSource source, CellCountPipeline.borderModes borderMode) throws IOException {
+    int width = source.getWidth();
+    int height = source.getHeight();
+
+    // The first pass creates the histogram after the weighted median filter and the gaussian blur.
+    long[] histogramArray = new long[CellCountPipeline.TOTAL_PIXELS];
+    RowStages.GreyscaleRowSink histogram = new RowStages.GreyscaleRowSink() {
+      @Override
+      public void push(int y, byte[] row) {
+        for (byte intensity : row) {
+          histogramArray[intensity & 0xFF]++;
+        }
+      }
+
+      @Override
+      public void finish() {
+      }
+    };
+    pushRows(source, RowStages.createSmoothingStages(width, height, borderMode, histogram, null));
+
+    LookupTable contrast = RowStages.createAutoContrast(histogramArray, S_LOW, S_HIGH);
+
+    // The second pass runs the whole pipeline, from the back to the front.
+    StreamingBlobCounter blobCounter = new StreamingBlobCounter(width, MIN_BLOB_SIZE);
+    RowStages.BinaryRowSink morphing = new RowStages.BinaryRowSink() {
+      @Override
+      public void push(int y, long[] row) {
+        blobCounter.push(row);
+      }
+
+      @Override
+      public void finish() {
+        blobCounter.finish();
+      }
+    };
+    // The closings N4, N8, N20 and N20 followed by the openings N4 and N8, each a dilation and an erosion.
+    StructuringElement n4 = StructuringElement.diamond(1);
+    StructuringElement n8 = StructuringElement.square(1);
+    StructuringElement n20 = StructuringElement.disk(Math.sqrt(5));
+    StructuringElement[] elements = {n4, n8, n20, n20, n4, n8};
+    boolean[] closings = {true, true, true, true, false, false};
+    for (int i = elements.length - 1; i >= 0; i--) {
+      morphing = new RowStages.MorphingStage(width, height, elements[i], closings[i], morphing);
+      morphing = new RowStages.MorphingStage(width, height, elements[i], !closings[i], morphing);
+    }
+
+    RowStages.GreyscaleRowSink edges = RowStages.createEdgeStages(width, height, borderMode, contrast, THRESHOLD,
+      morphing, null);
+    pushRows(source, RowStages.createSmoothingStages(width, height, borderMode, edges, null));
+    return blobCounter.getCount();
+  }
+
+  /**
+   * Reads every row of the source and pushes it to the first stage.
+   *
+   * @param source RowSource; The source of the rows.
+   * @param first  GreyscaleRowSink; The first stage.
+   * @throws IOException if a row cannot be read.
+   */
+  private static void pushRows(RowSource source, RowStages.GreyscaleRowSink first) throws IOException {
+    byte[] row = new byte[source.getWidth()];
+    for (int y = 0; y < source.getHeight(); y++) {
+      source.readRow(y, row);
+      first.push(y, row);
+    }
+    first.finish();
+  }
+}
@@ -0,0 +1,221 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Executes neighbourhood operations by splitting the image into horizontal strips that are processed in parallel on a
+ * ForkJoin pool. Every strip reads its halo rows, i.e. the rows above and below it that fall within the neighbourhood,
+ * directly from the shared source image, which is never written, so the result is identical to processing the whole
+ * image in one sequential pass.
+ */
+public class StripExecutor {
+  private static final int MIN_STRIP_ROWS = 16;
+  private static final int STRIPS_PER_THREAD = 4;
+  private static final StripExecutor SEQUENTIAL = new StripExecutor(1);
+  private final int parallelism;
+  private final ForkJoinPool pool;
+
+  /**
+   * Constructor for the StripExecutor class that creates its own ForkJoin pool with the given parallelism.
+   *
+   * @param parallelism int; The number of threads that process strips at the same time. With a parallelism of 1 the
+   *                    operations run sequentially on the calling thread.
+   */
+  public StripExecutor(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be at least 1 but was " + parallelism);
+    }
+    this.parallelism = parallelism;
+    this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Gets the executor that runs operations sequentially on the calling thread, for example when whole images are
+   * already processed in parallel.
+   *
+   * @return StripExecutor; Returns the shared sequential executor.
+   */
+  public static StripExecutor sequential() {
+    return SEQUENTIAL;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Applies the operation to every row of the source image and writes the result to the target image, splitting the
+   * rows into strips that are processed in parallel.
+   *
+   * @param operation NeighbourhoodOperation; The operation that is to be applied.
+   * @param source    GreyscaleImage; The image that the operation is applied to.
+   * @param target    GreyscaleImage; The image of the same size that the result is written to.
+   */
+  public void execute(NeighbourhoodOperation operation, GreyscaleImage source, GreyscaleImage target) {
+    int height = source.getHeight();
+    if (pool == null || height <= MIN_STRIP_ROWS) {
+      operation.apply(source, target, 0, height);
+      return;
+    }
+
+    pool.invoke(new Strip(operation, source, target, 0, height, getStripRows(height)));
+  }
+
+  /**
+   * Splits the rows of an image into the strips that are processed in parallel, for operations that need to know
+   * where the strips are, such as merging the results of the strips along their borders.
+   *
+   * @param height int; The number of rows of the image.
+   * @return int[]; Returns the first row of every strip followed by the height, so strip i covers the rows from
+   * strips[i] up to strips[i + 1]. There is a single strip if the executor is sequential.
+   */
+  public int[] getStrips(int height) {
+    if (pool == null || height <= MIN_STRIP_ROWS) {
+      return new int[]{0, height};
+    }
+
+    int stripRows = getStripRows(height);
+    int stripCount = (height + stripRows - 1) / stripRows;
+    int[] strips = new int[stripCount + 1];
+    for (int i = 0; i < stripCount; i++) {
+      strips[i] = i * stripRows;
+    }
+    strips[stripCount] = height;
+    return strips;
+  }
+
+  /**
+   * Runs a task for every strip of an image, processing the strips in parallel.
+   *
+   * @param strips int[]; The strips as returned by getStrips.
+   * @param task   StripTask; The task that is to be run for every strip.
+   */
+  public void forEachStrip(int[] strips, StripTask task) {
+    if (pool == null || strips.length <= 2) {
+      for (int i = 0; i + 1 < strips.length; i++) {
+        task.apply(i, strips[i], strips[i + 1]);
+      }
+      return;
+    }
+
+    pool.invoke(new StripRange(task, strips, 0, strips.length - 1));
+  }
+
+  /**
+   * Gets the number of rows of a strip, so that every thread gets a few strips to balance the load.
+   *
+   * @param height int; The number of rows of the image.
+   * @return int; Returns the maximum number of rows of a strip.
+   */
+  private int getStripRows(int height) {
+    return Math.max(MIN_STRIP_ROWS, (height + parallelism * STRIPS_PER_THREAD - 1)
+      / (parallelism * STRIPS_PER_THREAD));
+  }
+
+  /**
+   * Shuts down the ForkJoin pool of this executor once the operations that are running have completed.
+   */
+  public void shutdown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * A task that processes one strip of an image.
+   */
+  interface StripTask {
+    /**
+     * Processes the rows of a strip.
+     *
+     * @param strip   int; The index of the strip.
+     * @param fromRow int; The first row of the strip.
+     * @param toRow   int; The row after the last row of the strip.
+     */
+    void apply(int strip, int fromRow, int toRow);
+  }
+
+  /**
+   * A range of strips that is split in half until it is a single strip and then processed.
+   */
+  private static class StripRange extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final StripTask task;
+    private final int[] strips;
+    private final int fromStrip;
+    private final int toStrip;
+
+    /**
+     * Constructor for the StripRange class.
+     *
+     * @param task      StripTask; The task that is to be run for every strip.
+     * @param strips    int[]; The first row of every strip followed by the height of the image.
+     * @param fromStrip int; The first strip of the range.
+     * @param toStrip   int; The strip after the last strip of the range.
+     */
+    private StripRange(StripTask task, int[] strips, int fromStrip, int toStrip) {
+      this.task = task;
+      this.strips = strips;
+      this.fromStrip = fromStrip;
+      this.toStrip = toStrip;
+    }
+
+    @Override
+    protected void compute() {
+      if (toStrip - fromStrip == 1) {
+        task.apply(fromStrip, strips[fromStrip], strips[toStrip]);
+        return;
+      }
+
+      int middleStrip = (fromStrip + toStrip) >>> 1;
+      invokeAll(new StripRange(task, strips, fromStrip, middleStrip),
+        new StripRange(task, strips, middleStrip, toStrip));
+    }
+  }
+
+  /**
+   * A range of rows that is split in half until it is no larger than the strip size and then processed.
+   */
+  private static class Strip extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final NeighbourhoodOperation operation;
+    private final GreyscaleImage source;
+    private final GreyscaleImage target;
+    private final int fromRow;
+    private final int toRow;
+    private final int stripRows;
+
+    /**
+     * Constructor for the Strip class.
+     *
+     * @param operation NeighbourhoodOperation; The operation that is to be applied.
+     * @param source    GreyscaleImage; The image that the operation is applied to.
+     * @param target    GreyscaleImage; The image that the result is written to.
+     * @param fromRow   int; The first row of the range.
+     * @param toRow     int; The row after the last row of the range.
+     * @param stripRows int; The maximum number of rows that are processed by a single task.
+     */
+    private Strip(NeighbourhoodOperation operation, GreyscaleImage source, GreyscaleImage target, int fromRow,
+                  int toRow, int stripRows) {
+      this.operation = operation;
+      this.source = source;
+      this.target = target;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+      this.stripRows = stripRows;
+    }
+
+    @Override
+    protected void compute() {
+      if (toRow - fromRow <= stripRows) {
+        operation.apply(source, target, fromRow, toRow);
+        return;
+      }
+
+      int middleRow = (fromRow + toRow) >>> 1;
+      invokeAll(new Strip(operation, source, target, fromRow, middleRow, stripRows),
+        new Strip(operation, source, target, middleRow, toRow, stripRows));
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * A symmetric structuring element for the morphing operations, which is a square, a diamond or a disk of a given
+ * radius around its centre.
+ */
+public class StructuringElement {
+  enum shapes {SQUARE, DIAMOND, DISK}
+
+  private final shapes shape;
+  private final int radius;
+  private final int radiusSquared;
+
+  /**
+   * Constructor for the StructuringElement class.
+   *
+   * @param shape         shapes (enum); The shape of the structuring element.
+   * @param radius        int; The largest distance of a pixel of the element from its centre along the X or Y axis.
+   * @param radiusSquared int; The square of the radius, which for a disk is the largest squared euclidean distance
+   *                      of its pixels from its centre.
+   */
+  private StructuringElement(shapes shape, int radius, int radiusSquared) {
+    this.shape = shape;
+    this.radius = radius;
+    this.radiusSquared = radiusSquared;
+  }
+
+  /**
+   * Creates a square structuring element of (2 * radius + 1) x (2 * radius + 1) pixels, e.g. the 8-neighbourhood for a
+   * radius of 1.
+   *
+   * @param radius int; The radius of the square.
+   * @return StructuringElement; Returns the square structuring element.
+   */
+  public static StructuringElement square(int radius) {
+    checkRadius(radius);
+    return new StructuringElement(shapes.SQUARE, radius, radius * radius);
+  }
+
+  /**
+   * Creates a diamond structuring element of the pixels whose city block distance from the centre is at most the
+   * radius, e.g. the 4-neighbourhood for a radius of 1.
+   *
+   * @param radius int; The radius of the diamond.
+   * @return StructuringElement; Returns the diamond structuring element.
+   */
+  public static StructuringElement diamond(int radius) {
+    checkRadius(radius);
+    return new StructuringElement(shapes.DIAMOND, radius, radius * radius);
+  }
+
+  /**
+   * Creates a disk structuring element of the pixels whose euclidean distance from the centre is at most the radius,
+   * e.g. the 20-neighbourhood (a 5x5 square without its corners) for a radius of sqrt(5).
+   *
+   * @param radius double; The radius of the disk.
+   * @return StructuringElement; Returns the disk structuring element.
+   */
+  public static StructuringElement disk(double radius) {
+    if (!(radius >= 0)) {
+      throw new IllegalArgumentException("The radius must not be negative but was " + radius);
+    }
+    // The small tolerance keeps radii such as sqrt(5) from losing the pixels at exactly that distance.
+    int radiusSquared = (int) Math.floor(radius * radius + 1e-9);
+    return new StructuringElement(shapes.DISK, (int) Math.floor(Math.sqrt(radiusSquared)), radiusSquared);
+  }
+
+  /**
+   * Checks that the radius of a square or diamond is not negative.
+   *
+   * @param radius int; The radius that is to be checked.
+   */
+  private static void checkRadius(int radius) {
+    if (radius < 0) {
+      throw new IllegalArgumentException("The radius must not be negative but was " + radius);
+    }
+  }
+
+  /**
+   * Checks whether the pixel at the given offset from the centre belongs to the structuring element.
+   *
+   * @param dx int; The offset along the X axis.
+   * @param dy int; The offset along the Y axis.
+   * @return boolean; Returns true if the pixel belongs to the structuring element, otherwise false.
+   */
+  public boolean contains(int dx, int dy) {
+    switch (shape) {
+      case SQUARE:
+        return Math.abs(dx) <= radius && Math.abs(dy) <= radius;
+      case DIAMOND:
+        return Math.abs(dx) + Math.abs(dy) <= radius;
+      default:
+        return dx * dx + dy * dy <= radiusSquared;
+    }
+  }
+
+  /**
+   * Gets the offsets of all the pixels of the structuring element from its centre.
+   *
+   * @return int[][]; Returns the offsets {dx, dy} of the pixels of the structuring element.
+   */
+  public int[][] getOffsets() {
+    int count = 0;
+    for (int dy = -radius; dy <= radius; dy++) {
+      for (int dx = -radius; dx <= radius; dx++) {
+        if (contains(dx, dy)) {
+          count++;
+        }
+      }
+    }
+
+    int[][] offsets = new int[count][];
+    count = 0;
+    for (int dy = -radius; dy <= radius; dy++) {
+      for (int dx = -radius; dx <= radius; dx++) {
+        if (contains(dx, dy)) {
+          offsets[count++] = new int[]{dx, dy};
+        }
+      }
+    }
+    return offsets;
+  }
+
+  public shapes getShape() {
+    return shape;
+  }
+
+  /**
+   * Gets the radius of the structuring element, which is the largest offset of its pixels along the X or Y axis.
+   *
+   * @return int; Returns the radius in pixels.
+   */
+  public int getRadius() {
+    return radius;
+  }
+
+  /**
+   * Gets the square of the radius. For a disk this is the largest squared euclidean distance of its pixels from its
+   * centre, which is more precise than the rounded down radius.
+   *
+   * @return int; Returns the squared radius.
+   */
+  public int getRadiusSquared() {
+    return radiusSquared;
+  }
+
+  @Override
+  public String toString() {
+    return shape + "(" + (shape == shapes.DISK ? "sqrt(" + radiusSquared + ")" : String.valueOf(radius)) + ")";
+  }
+}
@@ -0,0 +1,53 @@
+import java.io.IOException;
+
+/**
+ * A source of rectangular regions of an 8 bit greyscale image, such as the tiles of a whole slide, so that the image
+ * can be processed tile by tile without holding all of its pixels in memory. Regions may be read from several threads
+ * at the same time.
+ */
+interface TileSource {
+  int getWidth();
+
+  int getHeight();
+
+  /**
+   * Reads a region of the image.
+   *
+   * @param x      int; The X coordinate of the top left pixel of the region.
+   * @param y      int; The Y coordinate of the top left pixel of the region.
+   * @param width  int; The width of the region, which lies within the image.
+   * @param height int; The height of the region, which lies within the image.
+   * @return GreyscaleImage; Returns a new image holding the pixels of the region.
+   * @throws IOException if the region cannot be read.
+   */
+  GreyscaleImage readRegion(int x, int y, int width, int height) throws IOException;
+
+  /**
+   * Creates a tile source that reads the regions of an image that is already in memory.
+   *
+   * @param image GreyscaleImage; The image whose regions are to be read.
+   * @return TileSource; Returns the tile source of the image.
+   */
+  static TileSource of(GreyscaleImage image) {
+    return new TileSource() {
+      @Override
+      public int getWidth() {
+        return image.getWidth();
+      }
+
+      @Override
+      public int getHeight() {
+        return image.getHeight();
+      }
+
+      @Override
+      public GreyscaleImage readRegion(int x, int y, int width, int height) {
+        GreyscaleImage region = new GreyscaleImage(width, height);
+        for (int v = 0; v < height; v++) {
+          System.arraycopy(image.getPixels(), (y + v) * image.getWidth() + x, region.getPixels(), v * width, width);
+        }
+        return region;
+      }
+    };
+  }
+}
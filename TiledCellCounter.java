@@ -0,0 +1,428 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the cells of a whole slide tile by tile, processing the tiles independently and in parallel, with the same
+ * result as processing the whole slide as a single image.
+ * <p>
+ * Every tile is read with a halo of the pixels around it that is as wide as the radii of all the neighbourhood and
+ * morphing operations together, so the pixels of the tile itself come out exactly as in the whole image, even though
+ * the pixels at the edge of the halo do not. The modified auto contrast needs the histogram of the whole slide, so the
+ * tiles are processed twice: first up to the gaussian blur to create the histogram, and then through the whole
+ * pipeline. The blobs of every tile are labeled without removing the small ones, and only the labels along the edges
+ * of the tile and the area of every blob are kept. The blobs that touch across the edges of neighbouring tiles are
+ * then merged with union-find, so a cell that crosses the edge of a tile is counted once and its area is the area of
+ * the whole cell when it is compared with the minimum size.
+ */
+public class TiledCellCounter {
+  private static final String THREADS_OPTION = "--threads=";
+  private static final String TILE_SIZE_OPTION = "--tile-size=";
+  private static final String BORDER_OPTION = "--border=";
+  private static final int DEFAULT_TILE_SIZE = 1024;
+  private static final int THRESHOLD = 65;
+  private static final int MIN_BLOB_SIZE = 92;
+  private static final double S_LOW = 0.65;
+  private static final double S_HIGH = 0.01;
+  private static final int FOREGROUND_INTENSITY = 0;
+  // The weighted median filter and the gaussian blur.
+  private static final int SMOOTHING_HALO = 1 + 1;
+  // The combined Sobel filters and the weighted median filter, then the dilation and erosion of every closing (N4, N8,
+  // N20, N20) and opening (N4, N8), where N20 has a radius of 2.
+  private static final int HALO = SMOOTHING_HALO + 1 + 1 + 2 * (1 + 1 + 2 + 2 + 1 + 1);
+  private final int tileSize;
+  private final int threads;
+  private final CellCountPipeline.borderModes borderMode;
+
+  /**
+   * Constructor for the TiledCellCounter class.
+   *
+   * @param tileSize   int; The width and height of the tiles, without their halo.
+   * @param threads    int; The number of tiles that are processed at the same time.
+   * @param borderMode CellCountPipeline.borderModes; How the linear filters fill the pixels outside the slide. The
+   *                   edges of a tile inside the slide are covered by its halo, so only the edges of the slide use it.
+   */
+  public TiledCellCounter(int tileSize, int threads, CellCountPipeline.borderModes borderMode) {
+    if (tileSize < 1 || threads < 1) {
+      throw new IllegalArgumentException("The tile size and the number of threads must be positive");
+    }
+    this.tileSize = tileSize;
+    this.threads = threads;
+    this.borderMode = borderMode;
+  }
+
+  /**
+   * The main method parses the options and prints the number of cells in the slide.
+   *
+   * @param args String[]; The optional --tile-size=n, --threads=n and --border=constant|replicate|reflect options
+   *             followed by the image file of the slide.
+   */
+  public static void main(String[] args) {
+    int tileSize = DEFAULT_TILE_SIZE;
+    int threads = Runtime.getRuntime().availableProcessors();
+    CellCountPipeline.borderModes borderMode = CellCountPipeline.borderModes.CONSTANT;
+    String filename = null;
+    try {
+      for (String arg : args) {
+        if (arg.startsWith(TILE_SIZE_OPTION)) {
+          tileSize = Integer.parseInt(arg.substring(TILE_SIZE_OPTION.length()));
+        } else if (arg.startsWith(THREADS_OPTION)) {
+          threads = Integer.parseInt(arg.substring(THREADS_OPTION.length()));
+        } else if (arg.startsWith(BORDER_OPTION)) {
+          try {
+            borderMode = CellCountPipeline.borderModes.valueOf(
+              arg.substring(BORDER_OPTION.length()).toUpperCase(Locale.ROOT));
+          } catch (IllegalArgumentException e) {
+            System.err.println("The border mode must be constant, replicate or reflect: " + arg);
+            return;
+          }
+        } else {
+          filename = arg;
+        }
+      }
+    } catch (NumberFormatException e) {
+      tileSize = 0;
+    }
+    if (filename == null || tileSize < 1 || threads < 1) {
+      System.err.println("Usage: java Counter --tiled [--tile-size=<n>] [--threads=<n>]"
+        + " [--border=<constant|replicate|reflect>] <filename>");
+      return;
+    }
+
+    try (ImageTileSource source = new ImageTileSource(new File(filename))) {
+      System.out.println("Total cells found = "
+        + new TiledCellCounter(tileSize, threads, borderMode).countCells(source));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Counts the cells of the slide.
+   *
+   * @param source TileSource; The source of the tiles of the slide.
+   * @return int; Returns the number of distinct cells found in the slide.
+   * @throws IOException if a tile cannot be read.
+   */
+  int countCells(TileSource source) throws IOException {
+    int columns = (source.getWidth() + tileSize - 1) / tileSize;
+    int rows = (source.getHeight() + tileSize - 1) / tileSize;
+    ExecutorService workers = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<long[]>> histograms = new ArrayList<>();
+      for (int row = 0; row < rows; row++) {
+        for (int column = 0; column < columns; column++) {
+          Tile tile = new Tile(source, column, row, SMOOTHING_HALO);
+          histograms.add(workers.submit(() -> createHistogram(source, tile, borderMode)));
+        }
+      }
+      long[] histogramArray = new long[CellCountPipeline.TOTAL_PIXELS];
+      for (Future<long[]> histogram : histograms) {
+        long[] tileHistogram = getResult(histogram);
+        for (int i = 0; i < histogramArray.length; i++) {
+          histogramArray[i] += tileHistogram[i];
+        }
+      }
+      int[] limits = CellCountPipeline.findAutoContrastLimits(
+        CellCountPipeline.createCumulativeHistogram(histogramArray), (long) source.getWidth() * source.getHeight(),
+        S_LOW, S_HIGH);
+
+      List<Future<TileBlobs>> tileBlobs = new ArrayList<>();
+      for (int row = 0; row < rows; row++) {
+        for (int column = 0; column < columns; column++) {
+          Tile tile = new Tile(source, column, row, HALO);
+          tileBlobs.add(workers.submit(() -> findBlobs(source, tile, borderMode, limits)));
+        }
+      }
+      List<TileBlobs> results = new ArrayList<>();
+      for (Future<TileBlobs> blobs : tileBlobs) {
+        results.add(getResult(blobs));
+      }
+      return mergeBlobs(results, columns, rows);
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for the result of a tile.
+   *
+   * @param future Future; The result of the tile.
+   * @param <T>    The type of the result.
+   * @return T; Returns the result.
+   * @throws IOException if the tile could not be read or processing was interrupted.
+   */
+  private static <T> T getResult(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while processing the tiles", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Could not process a tile", e.getCause());
+    }
+  }
+
+  /**
+   * Applies the weighted median filter and the gaussian blur to a tile and creates the histogram of the tile without
+   * its halo.
+   *
+   * @param source     TileSource; The source of the tiles of the slide.
+   * @param tile       Tile; The tile.
+   * @param borderMode CellCountPipeline.borderModes; How the linear filters fill the pixels outside the tile.
+   * @return long[]; Returns the histogram of the tile.
+   * @throws IOException if the tile cannot be read.
+   */
+  private static long[] createHistogram(TileSource source, Tile tile, CellCountPipeline.borderModes borderMode)
+    throws IOException {
+    CellCountPipeline pipeline = new CellCountPipeline(tile.read(source));
+    pipeline.setBorderMode(borderMode);
+    pipeline.applyWeightedMedianFilter();
+    pipeline.applySmoothing(CellCountPipeline.smoothingFilters.GAUSSIAN);
+
+    long[] histogramArray = new long[CellCountPipeline.TOTAL_PIXELS];
+    GreyscaleImage image = pipeline.getImage();
+    for (int y = tile.coreTop; y < tile.coreTop + tile.coreHeight; y++) {
+      for (int x = tile.coreLeft; x < tile.coreLeft + tile.coreWidth; x++) {
+        histogramArray[image.getIntensity(x, y)]++;
+      }
+    }
+    return histogramArray;
+  }
+
+  /**
+   * Runs the whole pipeline on a tile, with the limits of the modified auto contrast of the whole slide, and labels
+   * the blobs of the tile without its halo.
+   *
+   * @param source     TileSource; The source of the tiles of the slide.
+   * @param tile       Tile; The tile.
+   * @param borderMode CellCountPipeline.borderModes; How the linear filters fill the pixels outside the tile.
+   * @param limits     int[]; The aHatLow and aHatHigh of the modified auto contrast of the slide.
+   * @return TileBlobs; Returns the areas of the blobs and the labels along the edges of the tile.
+   * @throws IOException if the tile cannot be read.
+   */
+  private static TileBlobs findBlobs(TileSource source, Tile tile, CellCountPipeline.borderModes borderMode,
+                                     int[] limits) throws IOException {
+    CellCountPipeline pipeline = new CellCountPipeline(tile.read(source));
+    pipeline.setBorderMode(borderMode);
+    pipeline.applyWeightedMedianFilter();
+    pipeline.applySmoothing(CellCountPipeline.smoothingFilters.GAUSSIAN);
+    pipeline.applyModifiedAutoContrast(limits[0], limits[1]);
+    pipeline.applyEdgeDetection(CellCountPipeline.edgeDetectionFilters.COMBINED_SOBEL);
+    pipeline.applyWeightedMedianFilter();
+    pipeline.createBinaryImage(THRESHOLD);
+    pipeline.applyClosing(CellCountPipeline.structuringElements.N4);
+    pipeline.applyClosing(CellCountPipeline.structuringElements.N8);
+    pipeline.applyClosing(CellCountPipeline.structuringElements.N20);
+    pipeline.applyClosing(CellCountPipeline.structuringElements.N20);
+    pipeline.applyOpening(CellCountPipeline.structuringElements.N4);
+    pipeline.applyOpening(CellCountPipeline.structuringElements.N8);
+
+    GreyscaleImage image = pipeline.getImage();
+    BinaryImage core = new BinaryImage(tile.coreWidth, tile.coreHeight);
+    for (int y = 0; y < tile.coreHeight; y++) {
+      for (int x = 0; x < tile.coreWidth; x++) {
+        if (image.getIntensity(tile.coreLeft + x, tile.coreTop + y) == FOREGROUND_INTENSITY) {
+          core.set(x, y, true);
+        }
+      }
+    }
+
+    ConnectedComponentLabeler labeler = new ConnectedComponentLabeler();
+    TileBlobs blobs = new TileBlobs(labeler.label(core, 0), tile.coreWidth, tile.coreHeight);
+    for (int label = 1; label <= blobs.count; label++) {
+      blobs.areas[label] = labeler.getArea(label);
+    }
+    int[] labels = labeler.getLabels();
+    for (int x = 0; x < tile.coreWidth; x++) {
+      blobs.top[x] = labels[x];
+      blobs.bottom[x] = labels[(tile.coreHeight - 1) * tile.coreWidth + x];
+    }
+    for (int y = 0; y < tile.coreHeight; y++) {
+      blobs.left[y] = labels[y * tile.coreWidth];
+      blobs.right[y] = labels[y * tile.coreWidth + tile.coreWidth - 1];
+    }
+    return blobs;
+  }
+
+  /**
+   * Merges the blobs that touch across the edges of neighbouring tiles and counts the merged blobs that are at least
+   * as large as the minimum size.
+   *
+   * @param results List of TileBlobs; The blobs of every tile, row by row.
+   * @param columns int; The number of tiles in a row.
+   * @param rows    int; The number of rows of tiles.
+   * @return int; Returns the number of cells.
+   */
+  private static int mergeBlobs(List<TileBlobs> results, int columns, int rows) {
+    // Blob b of tile t becomes blob bases[t] + b of the slide.
+    int[] bases = new int[results.size()];
+    int blobCount = 0;
+    for (int t = 0; t < results.size(); t++) {
+      bases[t] = blobCount;
+      blobCount += results.get(t).count;
+    }
+    int[] parents = new int[blobCount + 1];
+    long[] areas = new long[blobCount + 1];
+    for (int t = 0; t < results.size(); t++) {
+      TileBlobs blobs = results.get(t);
+      for (int label = 1; label <= blobs.count; label++) {
+        parents[bases[t] + label] = bases[t] + label;
+        areas[bases[t] + label] = blobs.areas[label];
+      }
+    }
+
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        int t = row * columns + column;
+        TileBlobs blobs = results.get(t);
+        if (column + 1 < columns) {
+          TileBlobs right = results.get(t + 1);
+          for (int y = 0; y < blobs.right.length; y++) {
+            if (blobs.right[y] != 0 && right.left[y] != 0) {
+              union(parents, areas, bases[t] + blobs.right[y], bases[t + 1] + right.left[y]);
+            }
+          }
+        }
+        if (row + 1 < rows) {
+          TileBlobs below = results.get(t + columns);
+          for (int x = 0; x < blobs.bottom.length; x++) {
+            if (blobs.bottom[x] != 0 && below.top[x] != 0) {
+              union(parents, areas, bases[t] + blobs.bottom[x], bases[t + columns] + below.top[x]);
+            }
+          }
+        }
+      }
+    }
+
+    int count = 0;
+    for (int blob = 1; blob <= blobCount; blob++) {
+      if (parents[blob] == blob && areas[blob] >= MIN_BLOB_SIZE) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds the root of the tree of a blob, pointing every blob on the way directly at the root.
+   *
+   * @param parents int[]; The parent of every blob.
+   * @param blob    int; The blob.
+   * @return int; Returns the root of the blob.
+   */
+  private static int find(int[] parents, int blob) {
+    int root = blob;
+    while (parents[root] != root) {
+      root = parents[root];
+    }
+    while (parents[blob] != root) {
+      int parent = parents[blob];
+      parents[blob] = root;
+      blob = parent;
+    }
+    return root;
+  }
+
+  /**
+   * Merges two blobs, adding up their areas.
+   *
+   * @param parents int[]; The parent of every blob.
+   * @param areas   long[]; The area of every root blob.
+   * @param a       int; The first blob.
+   * @param b       int; The second blob.
+   */
+  private static void union(int[] parents, long[] areas, int a, int b) {
+    int rootA = find(parents, a);
+    int rootB = find(parents, b);
+    if (rootA != rootB) {
+      parents[rootB] = rootA;
+      areas[rootA] += areas[rootB];
+    }
+  }
+
+  /**
+   * A tile of the slide and the region that is read for it, which includes the halo where the slide has pixels.
+   */
+  private class Tile {
+    private final int regionLeft;
+    private final int regionTop;
+    private final int regionWidth;
+    private final int regionHeight;
+    private final int coreLeft;
+    private final int coreTop;
+    private final int coreWidth;
+    private final int coreHeight;
+
+    /**
+     * Constructor for the Tile class.
+     *
+     * @param source TileSource; The source of the tiles of the slide.
+     * @param column int; The column of the tile.
+     * @param row    int; The row of the tile.
+     * @param halo   int; The width of the halo around the tile.
+     */
+    private Tile(TileSource source, int column, int row, int halo) {
+      int left = column * tileSize;
+      int top = row * tileSize;
+      int right = Math.min(source.getWidth(), left + tileSize);
+      int bottom = Math.min(source.getHeight(), top + tileSize);
+      regionLeft = Math.max(0, left - halo);
+      regionTop = Math.max(0, top - halo);
+      regionWidth = Math.min(source.getWidth(), right + halo) - regionLeft;
+      regionHeight = Math.min(source.getHeight(), bottom + halo) - regionTop;
+      coreLeft = left - regionLeft;
+      coreTop = top - regionTop;
+      coreWidth = right - left;
+      coreHeight = bottom - top;
+    }
+
+    /**
+     * Reads the region of the tile.
+     *
+     * @param source TileSource; The source of the tiles of the slide.
+     * @return GreyscaleImage; Returns the pixels of the tile and its halo.
+     * @throws IOException if the region cannot be read.
+     */
+    private GreyscaleImage read(TileSource source) throws IOException {
+      return source.readRegion(regionLeft, regionTop, regionWidth, regionHeight);
+    }
+  }
+
+  /**
+   * The blobs of a tile: the area of every blob and the labels of the pixels along the edges of the tile.
+   */
+  private static class TileBlobs {
+    private final int count;
+    private final int[] areas;
+    private final int[] top;
+    private final int[] bottom;
+    private final int[] left;
+    private final int[] right;
+
+    /**
+     * Constructor for the TileBlobs class.
+     *
+     * @param count  int; The number of blobs, which are labeled from 1.
+     * @param width  int; The width of the tile.
+     * @param height int; The height of the tile.
+     */
+    private TileBlobs(int count, int width, int height) {
+      this.count = count;
+      this.areas = new int[count + 1];
+      this.top = new int[width];
+      this.bottom = new int[width];
+      this.left = new int[height];
+      this.right = new int[height];
+    }
+  }
+}
@@ -0,0 +1,311 @@
+/**
+ * A weighted median filter of any radius, where the weight of a pixel in the neighbourhood decreases with its city
+ * block distance from the centre: weight(i, j) = 2 * radius + 1 - |i| - |j|. For a radius of 1 these are the weights
+ * 1 2 1, 2 3 2, 1 2 1 of the 3x3 weighted median filter.
+ * <p>
+ * Instead of copying every pixel value into an array as often as its weight and sorting that array, the weights are
+ * added to a two level histogram (16 coarse bins of 16 fine bins each) that is reused for every pixel. The median is
+ * then found by walking at most 16 coarse and 16 fine bins, and only the bins that were touched are cleared again, so
+ * no memory is allocated per pixel and the cost grows linearly with the size of the neighbourhood. Pixels outside the
+ * image are left out, so the median near the border is the median of the pixels that are actually there.
+ * <p>
+ * The 3x3 filter, which the pipeline runs twice per image, does not need the histogram for the pixels whose whole
+ * neighbourhood is within the image. Their 9 intensities are sorted together with their weights by a sorting network
+ * of 25 compare and exchange steps, which compile to branch free min and max instructions, and the median is the
+ * intensity where the running sum of the weights passes half of the total weight of 15. As the weights move with the
+ * window, a histogram that slides along the row would have to change the weight of every pixel of the window at every
+ * step, so it would do no less work than building it again.
+ */
+public class WeightedMedianFilter implements NeighbourhoodOperation {
+  private static final int TOTAL_PIXELS = 256;
+  private static final int FINE_BINS = 16;
+  private static final int COARSE_SHIFT = 4;
+  /**
+   * The total weight of the 3x3 neighbourhood, whose median is the value at rank 7.
+   */
+  private static final int TOTAL_WEIGHT_3X3 = 15;
+  private final int radius;
+  private final int[] weights;
+  private final PaddedRowFilter sortingNetwork;
+
+  /**
+   * Constructor for the WeightedMedianFilter class.
+   *
+   * @param radius int; The radius of the neighbourhood, 1 for a 3x3 neighbourhood, 2 for a 5x5 neighbourhood and so on.
+   */
+  public WeightedMedianFilter(int radius) {
+    if (radius < 1) {
+      throw new IllegalArgumentException("The radius must be at least 1 but was " + radius);
+    }
+    this.radius = radius;
+    int size = 2 * radius + 1;
+    this.weights = new int[size * size];
+    for (int j = -radius; j <= radius; j++) {
+      for (int i = -radius; i <= radius; i++) {
+        weights[(j + radius) * size + i + radius] = size - Math.abs(i) - Math.abs(j);
+      }
+    }
+    this.sortingNetwork = radius == 1 ? createSortingNetwork() : null;
+  }
+
+  public int getRadius() {
+    return radius;
+  }
+
+  @Override
+  public void apply(GreyscaleImage source, GreyscaleImage target, int fromRow, int toRow) {
+    if (sortingNetwork != null) {
+      sortingNetwork.apply(source, target, fromRow, toRow);
+      return;
+    }
+
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int size = 2 * radius + 1;
+    byte[] pixels = source.getPixels();
+    byte[] result = target.getPixels();
+    int[] fineHistogram = new int[TOTAL_PIXELS];
+    int[] coarseHistogram = new int[TOTAL_PIXELS / FINE_BINS];
+
+    for (int y = fromRow; y < toRow; y++) {
+      int top = Math.max(0, y - radius);
+      int bottom = Math.min(height - 1, y + radius);
+      for (int x = 0; x < width; x++) {
+        int left = Math.max(0, x - radius);
+        int right = Math.min(width - 1, x + radius);
+
+        int total = 0;
+        for (int v = top; v <= bottom; v++) {
+          int rowOffset = v * width;
+          int weightOffset = (v - y + radius) * size + radius - x;
+          for (int u = left; u <= right; u++) {
+            int intensity = pixels[rowOffset + u] & 0xFF;
+            int weight = weights[weightOffset + u];
+            fineHistogram[intensity] += weight;
+            coarseHistogram[intensity >> COARSE_SHIFT] += weight;
+            total += weight;
+          }
+        }
+
+        int median;
+        if (total % 2 == 0) {
+          // if the total weight is even
+          median = (select(fineHistogram, coarseHistogram, (total - 1) / 2)
+            + select(fineHistogram, coarseHistogram, total / 2)) / 2;
+        } else {
+          // if the total weight is odd
+          median = select(fineHistogram, coarseHistogram, total / 2);
+        }
+        result[y * width + x] = (byte) median;
+
+        for (int v = top; v <= bottom; v++) {
+          int rowOffset = v * width;
+          for (int u = left; u <= right; u++) {
+            int intensity = pixels[rowOffset + u] & 0xFF;
+            fineHistogram[intensity] = 0;
+            coarseHistogram[intensity >> COARSE_SHIFT] = 0;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates the 3x3 weighted median filter as a filter of the widened rows, where the pixels outside the image are
+   * OUTSIDE. The pixels whose neighbourhood is within the image are sorted by the sorting network, and the pixels on
+   * the border of the image, whose neighbourhood is incomplete, are ranked one by one.
+   *
+   * @return PaddedRowFilter; Returns the 3x3 weighted median filter.
+   */
+  static PaddedRowFilter createSortingNetwork() {
+    return new PaddedRowFilter() {
+      @Override
+      void computeRow(int[] above, int[] centre, int[] below, int[] output, int width) {
+        if (above[1] == OUTSIDE || below[1] == OUTSIDE) {
+          for (int x = 0; x < width; x++) {
+            output[x] = rankNeighbourhood(above, centre, below, x);
+          }
+          return;
+        }
+
+        output[0] = rankNeighbourhood(above, centre, below, 0);
+        for (int x = 1; x < width - 1; x++) {
+          output[x] = sortNeighbourhood(above, centre, below, x);
+        }
+        if (width > 1) {
+          output[width - 1] = rankNeighbourhood(above, centre, below, width - 1);
+        }
+      }
+    };
+  }
+
+  /**
+   * Finds the weighted median of a 3x3 neighbourhood within the image with the sorting network. Every value is packed
+   * with its weight in the lowest two bits, so they are sorted together by intensity.
+   *
+   * @param above  int[]; The widened row above the row, where pixel x is at index x + 1.
+   * @param centre int[]; The widened row itself.
+   * @param below  int[]; The widened row below the row.
+   * @param x      int; The X coordinate of the pixel.
+   * @return int; Returns the weighted median.
+   */
+  private static int sortNeighbourhood(int[] above, int[] centre, int[] below, int x) {
+    int v0 = above[x] << 2 | 1;
+    int v1 = above[x + 1] << 2 | 2;
+    int v2 = above[x + 2] << 2 | 1;
+    int v3 = centre[x] << 2 | 2;
+    int v4 = centre[x + 1] << 2 | 3;
+    int v5 = centre[x + 2] << 2 | 2;
+    int v6 = below[x] << 2 | 1;
+    int v7 = below[x + 1] << 2 | 2;
+    int v8 = below[x + 2] << 2 | 1;
+    int t;
+    // The 25 compare and exchange steps of a sorting network for 9 values, each of which puts the smaller value first.
+    t = Math.min(v0, v3); v3 = Math.max(v0, v3); v0 = t;
+    t = Math.min(v1, v7); v7 = Math.max(v1, v7); v1 = t;
+    t = Math.min(v2, v5); v5 = Math.max(v2, v5); v2 = t;
+    t = Math.min(v4, v8); v8 = Math.max(v4, v8); v4 = t;
+    t = Math.min(v0, v7); v7 = Math.max(v0, v7); v0 = t;
+    t = Math.min(v2, v4); v4 = Math.max(v2, v4); v2 = t;
+    t = Math.min(v3, v8); v8 = Math.max(v3, v8); v3 = t;
+    t = Math.min(v5, v6); v6 = Math.max(v5, v6); v5 = t;
+    t = Math.min(v0, v2); v2 = Math.max(v0, v2); v0 = t;
+    t = Math.min(v1, v3); v3 = Math.max(v1, v3); v1 = t;
+    t = Math.min(v4, v5); v5 = Math.max(v4, v5); v4 = t;
+    t = Math.min(v7, v8); v8 = Math.max(v7, v8); v7 = t;
+    t = Math.min(v1, v4); v4 = Math.max(v1, v4); v1 = t;
+    t = Math.min(v3, v6); v6 = Math.max(v3, v6); v3 = t;
+    t = Math.min(v5, v7); v7 = Math.max(v5, v7); v5 = t;
+    t = Math.min(v0, v1); v1 = Math.max(v0, v1); v0 = t;
+    t = Math.min(v2, v4); v4 = Math.max(v2, v4); v2 = t;
+    t = Math.min(v3, v5); v5 = Math.max(v3, v5); v3 = t;
+    t = Math.min(v6, v8); v8 = Math.max(v6, v8); v6 = t;
+    t = Math.min(v2, v3); v3 = Math.max(v2, v3); v2 = t;
+    t = Math.min(v4, v5); v5 = Math.max(v4, v5); v4 = t;
+    t = Math.min(v6, v7); v7 = Math.max(v6, v7); v6 = t;
+    t = Math.min(v1, v2); v2 = Math.max(v1, v2); v1 = t;
+    t = Math.min(v3, v4); v4 = Math.max(v3, v4); v3 = t;
+    t = Math.min(v5, v6); v6 = Math.max(v5, v6); v5 = t;
+
+    // The median is the first value where the running sum of the weights passes the rank of 7. No weight is more than
+    // 3, so the first two weights cannot pass it and the first eight always do. The running sums only grow, so the
+    // values are tried from the last to the first without any branch that depends on the intensities.
+    int rank = TOTAL_WEIGHT_3X3 / 2;
+    int cumulative2 = (v0 & 3) + (v1 & 3) + (v2 & 3);
+    int cumulative3 = cumulative2 + (v3 & 3);
+    int cumulative4 = cumulative3 + (v4 & 3);
+    int cumulative5 = cumulative4 + (v5 & 3);
+    int cumulative6 = cumulative5 + (v6 & 3);
+    int median = v7;
+    median = cumulative6 > rank ? v6 : median;
+    median = cumulative5 > rank ? v5 : median;
+    median = cumulative4 > rank ? v4 : median;
+    median = cumulative3 > rank ? v3 : median;
+    median = cumulative2 > rank ? v2 : median;
+    return median >> 2;
+  }
+
+  /**
+   * Finds the weighted median of a 3x3 neighbourhood that may reach beyond the image by ranking every value against
+   * the others, leaving out the OUTSIDE pixels. If the total weight is even, it is the mean of the two middle values.
+   *
+   * @param above  int[]; The widened row above the row, where pixel x is at index x + 1.
+   * @param centre int[]; The widened row itself.
+   * @param below  int[]; The widened row below the row.
+   * @param x      int; The X coordinate of the pixel.
+   * @return int; Returns the weighted median.
+   */
+  private static int rankNeighbourhood(int[] above, int[] centre, int[] below, int x) {
+    int total = 0;
+    for (int tap = 0; tap < 9; tap++) {
+      total += getWeightedValue(above, centre, below, x, tap % 3, tap / 3) & 3;
+    }
+    if (total % 2 == 0) {
+      return (selectNeighbourhood(above, centre, below, x, (total - 1) / 2)
+        + selectNeighbourhood(above, centre, below, x, total / 2)) / 2;
+    }
+    return selectNeighbourhood(above, centre, below, x, total / 2);
+  }
+
+  /**
+   * Finds the intensity at the given rank of a 3x3 neighbourhood, where every intensity is repeated as often as its
+   * weight. An intensity is at the rank if the weight of the smaller intensities is at most the rank and the weight of
+   * the intensities up to it is more.
+   *
+   * @param above  int[]; The widened row above the row, where pixel x is at index x + 1.
+   * @param centre int[]; The widened row itself.
+   * @param below  int[]; The widened row below the row.
+   * @param x      int; The X coordinate of the pixel.
+   * @param rank   int; The zero based rank that is to be found.
+   * @return int; Returns the intensity at the given rank.
+   */
+  private static int selectNeighbourhood(int[] above, int[] centre, int[] below, int x, int rank) {
+    for (int candidate = 0; candidate < 9; candidate++) {
+      int value = getWeightedValue(above, centre, below, x, candidate % 3, candidate / 3);
+      if ((value & 3) == 0) {
+        continue;
+      }
+      int intensity = value >> 2;
+      int smaller = 0;
+      int upTo = 0;
+      for (int tap = 0; tap < 9; tap++) {
+        int other = getWeightedValue(above, centre, below, x, tap % 3, tap / 3);
+        int weight = other & 3;
+        int otherIntensity = other >> 2;
+        smaller += otherIntensity < intensity ? weight : 0;
+        upTo += otherIntensity <= intensity ? weight : 0;
+      }
+      if (smaller <= rank && rank < upTo) {
+        return intensity;
+      }
+    }
+    throw new IllegalStateException("No intensity at rank " + rank);
+  }
+
+  /**
+   * Gets a pixel of the 3x3 neighbourhood packed with its weight in the lowest two bits, where the weight of an
+   * OUTSIDE pixel is 0.
+   *
+   * @param above  int[]; The widened row above the row, where pixel x is at index x + 1.
+   * @param centre int[]; The widened row itself.
+   * @param below  int[]; The widened row below the row.
+   * @param x      int; The X coordinate of the pixel in the centre.
+   * @param i      int; The column of the neighbourhood, from 0 to 2.
+   * @param j      int; The row of the neighbourhood, from 0 to 2.
+   * @return int; Returns the intensity shifted left by two bits and the weight.
+   */
+  private static int getWeightedValue(int[] above, int[] centre, int[] below, int x, int i, int j) {
+    int intensity = (j == 0 ? above : j == 1 ? centre : below)[x + i];
+    if (intensity == PaddedRowFilter.OUTSIDE) {
+      return 0;
+    }
+    return intensity << 2 | 3 - Math.abs(i - 1) - Math.abs(j - 1);
+  }
+
+  /**
+   * Finds the intensity at the given rank in the weighted histogram, i.e. the value that would be at that index if
+   * every intensity was repeated as often as its weight and sorted in ascending order.
+   *
+   * @param fineHistogram   int[]; The total weight of every intensity.
+   * @param coarseHistogram int[]; The total weight of every block of 16 intensities.
+   * @param rank            int; The zero based rank that is to be found.
+   * @return int; Returns the intensity at the given rank.
+   */
+  private static int select(int[] fineHistogram, int[] coarseHistogram, int rank) {
+    int block = 0;
+    int cumulative = coarseHistogram[0];
+    while (cumulative <= rank) {
+      block++;
+      cumulative += coarseHistogram[block];
+    }
+    cumulative -= coarseHistogram[block];
+
+    int intensity = block << COARSE_SHIFT;
+    cumulative += fineHistogram[intensity];
+    while (cumulative <= rank) {
+      intensity++;
+      cumulative += fineHistogram[intensity];
+    }
+    return intensity;
+  }
+}
@@ -0,0 +1,163 @@
+import cellcounter.benchmarks.PipelineDriver;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The driver of the cell counter for the benchmarks, which lives in the default package next to the cell counter so
+ * that it can call the package private operations of CellCountPipeline.
+ */
+public class CellCounterDriver implements PipelineDriver {
+  private static final int BACKGROUND_INTENSITY = 190;
+  private static final int CELL_INTENSITY = 90;
+  private static final double NOISE = 12;
+  private static final int PIXELS_PER_CELL = 4000;
+  private static final int MIN_CELL_RADIUS = 5;
+  private static final int MAX_CELL_RADIUS = 14;
+  /**
+   * The operations of CellCountPipeline.countCells with the staged preprocessing before the region labeling.
+   */
+  private static final Stage[] COUNT_CELLS_OPERATIONS = {Stage.WEIGHTED_MEDIAN_FILTER, Stage.GAUSSIAN_BLUR,
+    Stage.MODIFIED_AUTO_CONTRAST, Stage.COMBINED_SOBEL_FILTERS, Stage.WEIGHTED_MEDIAN_FILTER, Stage.THRESHOLD,
+    Stage.CLOSING_N4, Stage.CLOSING_N8, Stage.CLOSING_N20, Stage.CLOSING_N20, Stage.OPENING_N4, Stage.OPENING_N8};
+
+  @Override
+  public Object readImage(File file) throws IOException {
+    BufferedImage image = ImageIO.read(file);
+    if (image == null) {
+      throw new IOException("not a supported image: " + file);
+    }
+    return GreyscaleImage.fromBufferedImage(image);
+  }
+
+  @Override
+  public Object createSyntheticImage(int width, int height, long seed) {
+    Random random = new Random(seed);
+    GreyscaleImage image = new GreyscaleImage(width, height);
+    byte[] pixels = image.getPixels();
+    int[] base = new int[pixels.length];
+    Arrays.fill(base, BACKGROUND_INTENSITY);
+    int cells = (int) ((long) width * height / PIXELS_PER_CELL);
+    for (int i = 0; i < cells; i++) {
+      int centreX = random.nextInt(width);
+      int centreY = random.nextInt(height);
+      int radius = MIN_CELL_RADIUS + random.nextInt(MAX_CELL_RADIUS - MIN_CELL_RADIUS + 1);
+      for (int y = Math.max(0, centreY - radius); y <= Math.min(height - 1, centreY + radius); y++) {
+        for (int x = Math.max(0, centreX - radius); x <= Math.min(width - 1, centreX + radius); x++) {
+          int dx = x - centreX;
+          int dy = y - centreY;
+          if (dx * dx + dy * dy <= radius * radius) {
+            base[y * width + x] = CELL_INTENSITY;
+          }
+        }
+      }
+    }
+    for (int i = 0; i < pixels.length; i++) {
+      int intensity = (int) Math.round(base[i] + random.nextGaussian() * NOISE);
+      pixels[i] = (byte) Math.min(255, Math.max(0, intensity));
+    }
+    return image;
+  }
+
+  @Override
+  public Object prepareInput(Object image, Stage stage) {
+    CellCountPipeline pipeline = new CellCountPipeline(((GreyscaleImage) image).copy());
+    for (int i = 0; i < getPrecedingOperations(stage); i++) {
+      apply(pipeline, COUNT_CELLS_OPERATIONS[i]);
+    }
+    return pipeline.getImage();
+  }
+
+  /**
+   * Gets the number of operations of countCells that are applied before an operation. The Kirsch filters take the
+   * place of the combined Sobel filters, and every opening and closing is applied to the image after the threshold.
+   *
+   * @param stage Stage; The operation.
+   * @return int; Returns the number of operations at the start of COUNT_CELLS_OPERATIONS.
+   */
+  private static int getPrecedingOperations(Stage stage) {
+    switch (stage) {
+      case WEIGHTED_MEDIAN_FILTER:
+        return 0;
+      case GAUSSIAN_BLUR:
+        return 1;
+      case MODIFIED_AUTO_CONTRAST:
+        return 2;
+      case COMBINED_SOBEL_FILTERS:
+      case KIRSCH_FILTERS:
+        return 3;
+      case THRESHOLD:
+        return 5;
+      case REGION_LABELING:
+        return COUNT_CELLS_OPERATIONS.length;
+      default:
+        return 6;
+    }
+  }
+
+  @Override
+  public Object createPipeline(Object image) {
+    return new CellCountPipeline(((GreyscaleImage) image).copy());
+  }
+
+  @Override
+  public Object createStagedPipeline(Object image) {
+    return new CellCountPipeline(((GreyscaleImage) image).copy(), (label, stageImage) -> {
+    });
+  }
+
+  @Override
+  public Object apply(Object pipeline, Stage stage) {
+    CellCountPipeline cellCountPipeline = (CellCountPipeline) pipeline;
+    switch (stage) {
+      case WEIGHTED_MEDIAN_FILTER:
+        cellCountPipeline.applyWeightedMedianFilter();
+        break;
+      case GAUSSIAN_BLUR:
+        cellCountPipeline.applySmoothing(CellCountPipeline.smoothingFilters.GAUSSIAN);
+        break;
+      case MODIFIED_AUTO_CONTRAST:
+        cellCountPipeline.applyModifiedAutoContrast(0.65, 0.01);
+        break;
+      case COMBINED_SOBEL_FILTERS:
+        cellCountPipeline.applyEdgeDetection(CellCountPipeline.edgeDetectionFilters.COMBINED_SOBEL);
+        break;
+      case KIRSCH_FILTERS:
+        cellCountPipeline.applyEdgeDetection(CellCountPipeline.edgeDetectionFilters.KIRSCH);
+        break;
+      case THRESHOLD:
+        cellCountPipeline.createBinaryImage(65);
+        break;
+      case CLOSING_N4:
+        cellCountPipeline.applyClosing(CellCountPipeline.structuringElements.N4);
+        break;
+      case CLOSING_N8:
+        cellCountPipeline.applyClosing(CellCountPipeline.structuringElements.N8);
+        break;
+      case CLOSING_N20:
+        cellCountPipeline.applyClosing(CellCountPipeline.structuringElements.N20);
+        break;
+      case OPENING_N4:
+        cellCountPipeline.applyOpening(CellCountPipeline.structuringElements.N4);
+        break;
+      case OPENING_N8:
+        cellCountPipeline.applyOpening(CellCountPipeline.structuringElements.N8);
+        break;
+      case OPENING_N20:
+        cellCountPipeline.applyOpening(CellCountPipeline.structuringElements.N20);
+        break;
+      default:
+        return cellCountPipeline.regionLabeling(92);
+    }
+    return cellCountPipeline;
+  }
+
+  @Override
+  public int countCells(Object pipeline) {
+    return ((CellCountPipeline) pipeline).countCells();
+  }
+}
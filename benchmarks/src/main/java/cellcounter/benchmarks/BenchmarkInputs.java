@@ -0,0 +1,50 @@
+package cellcounter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The input images of the benchmarks: the bundled images by file name, or the synthetic frames of 1, 4 and 16
+ * megapixels. The bundled images are read from the directory given by the cellcounter.images system property, which
+ * is the images directory of the working directory by default.
+ */
+final class BenchmarkInputs {
+  /**
+   * The names of all the inputs, for the @Param annotations.
+   */
+  static final String BUNDLED_1 = "45780.jpg";
+  static final String BUNDLED_2 = "45799.jpg";
+  static final String BUNDLED_3 = "46075.jpg";
+  static final String BUNDLED_4 = "46265.jpg";
+  static final String SYNTHETIC_1MP = "synthetic-1MP";
+  static final String SYNTHETIC_4MP = "synthetic-4MP";
+  static final String SYNTHETIC_16MP = "synthetic-16MP";
+  private static final String SYNTHETIC_PREFIX = "synthetic-";
+  private static final long SEED = 42;
+
+  private BenchmarkInputs() {
+  }
+
+  /**
+   * Reads or creates an input image.
+   *
+   * @param driver PipelineDriver; The driver of the cell counter.
+   * @param name   String; The file name of a bundled image, or synthetic-nMP for a synthetic square frame of n
+   *               megapixels.
+   * @return Object; Returns the greyscale image.
+   * @throws IOException If the bundled image cannot be read.
+   */
+  static Object load(PipelineDriver driver, String name) throws IOException {
+    if (name.startsWith(SYNTHETIC_PREFIX) && name.endsWith("MP")) {
+      int megapixels = Integer.parseInt(name.substring(SYNTHETIC_PREFIX.length(), name.length() - 2));
+      int size = (int) Math.round(Math.sqrt(megapixels) * 1024);
+      return driver.createSyntheticImage(size, size, SEED);
+    }
+    File directory = new File(System.getProperty("cellcounter.images", "images"));
+    File file = new File(directory, name);
+    if (!file.isFile()) {
+      file = new File(new File("..", directory.getPath()), name);
+    }
+    return driver.readImage(file);
+  }
+}
@@ -0,0 +1,36 @@
+package cellcounter.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options, e.g. a regular expression of the benchmarks and -p to
+ * select the parameters, and always with the GC profiler, so that the allocation rate and the bytes allocated per
+ * operation are reported next to the time.
+ */
+public class BenchmarkMain {
+  private BenchmarkMain() {
+  }
+
+  /**
+   * The main method runs the benchmarks.
+   *
+   * @param args String[]; The JMH command line options.
+   * @throws CommandLineOptionException If the options cannot be parsed.
+   * @throws RunnerException            If a benchmark fails.
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+    if (commandLineOptions.getProfilers().stream().noneMatch(p -> p.getKlass().equals(GCProfiler.class.getName())
+      || p.getKlass().equals("gc"))) {
+      options.addProfiler(GCProfiler.class);
+    }
+    new Runner(options.build()).run();
+  }
+}
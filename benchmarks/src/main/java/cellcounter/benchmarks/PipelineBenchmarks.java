@@ -0,0 +1,61 @@
+package cellcounter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole count of the cells in an image. countCells runs the preprocessing fused, as in batch mode, and
+ * countCellsStaged runs every operation on its own and passes every image to a listener, as the GUI of Counter.main
+ * does, without the cost of displaying them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmarks {
+  @Param({BenchmarkInputs.BUNDLED_1, BenchmarkInputs.BUNDLED_2, BenchmarkInputs.BUNDLED_3, BenchmarkInputs.BUNDLED_4,
+    BenchmarkInputs.SYNTHETIC_1MP, BenchmarkInputs.SYNTHETIC_4MP, BenchmarkInputs.SYNTHETIC_16MP})
+  public String input;
+
+  private PipelineDriver driver;
+  private Object image;
+  private Object pipeline;
+  private Object stagedPipeline;
+
+  @Setup(Level.Trial)
+  public void loadInput() throws IOException {
+    driver = PipelineDriver.load();
+    image = BenchmarkInputs.load(driver, input);
+  }
+
+  @Setup(Level.Invocation)
+  public void createPipelines() {
+    pipeline = driver.createPipeline(image);
+    stagedPipeline = driver.createStagedPipeline(image);
+  }
+
+  @Benchmark
+  public int countCells() {
+    return driver.countCells(pipeline);
+  }
+
+  @Benchmark
+  public int countCellsStaged() {
+    return driver.countCells(stagedPipeline);
+  }
+}
@@ -0,0 +1,109 @@
+package cellcounter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Drives the cell counter for the benchmarks. The cell counter lives in the default package, which cannot be imported
+ * by the benchmarks, as JMH needs them in a named package, so the driver is implemented by CellCounterDriver in the
+ * default package and loaded once by name. The images and pipelines are passed around as opaque objects, and every
+ * benchmarked call is a plain interface call.
+ */
+public interface PipelineDriver {
+  /**
+   * The operations of the image processing pipeline, in the order of CellCountPipeline.countCells with the staged
+   * preprocessing, plus the Kirsch filters as the alternative to the combined Sobel filters and every structuring
+   * element for the opening and closing.
+   */
+  enum Stage {
+    WEIGHTED_MEDIAN_FILTER,
+    GAUSSIAN_BLUR,
+    MODIFIED_AUTO_CONTRAST,
+    COMBINED_SOBEL_FILTERS,
+    KIRSCH_FILTERS,
+    THRESHOLD,
+    CLOSING_N4,
+    CLOSING_N8,
+    CLOSING_N20,
+    OPENING_N4,
+    OPENING_N8,
+    OPENING_N20,
+    REGION_LABELING
+  }
+
+  /**
+   * Loads the driver of the cell counter that is compiled into the benchmarks.
+   *
+   * @return PipelineDriver; Returns the driver.
+   */
+  static PipelineDriver load() {
+    try {
+      return (PipelineDriver) Class.forName("CellCounterDriver").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("The cell counter is not on the class path", e);
+    }
+  }
+
+  /**
+   * Reads an 8 bit greyscale image.
+   *
+   * @param file File; The image file.
+   * @return Object; Returns the greyscale image.
+   * @throws IOException If the file cannot be read as an image.
+   */
+  Object readImage(File file) throws IOException;
+
+  /**
+   * Creates a synthetic image of dark round cells with noise on a bright background, which is the same for the same
+   * size and seed.
+   *
+   * @param width  int; The width of the image.
+   * @param height int; The height of the image.
+   * @param seed   long; The seed of the random cells and noise.
+   * @return Object; Returns the greyscale image.
+   */
+  Object createSyntheticImage(int width, int height, long seed);
+
+  /**
+   * Creates the image that an operation is applied to, by applying the operations before it to a copy of the image.
+   *
+   * @param image Object; The greyscale image as it was read.
+   * @param stage Stage; The operation.
+   * @return Object; Returns the greyscale image before the operation.
+   */
+  Object prepareInput(Object image, Stage stage);
+
+  /**
+   * Creates a pipeline for a copy of the image.
+   *
+   * @param image Object; The greyscale image, which is not changed.
+   * @return Object; Returns the pipeline.
+   */
+  Object createPipeline(Object image);
+
+  /**
+   * Applies an operation to the image of a pipeline.
+   *
+   * @param pipeline Object; The pipeline.
+   * @param stage    Stage; The operation.
+   * @return Object; Returns the number of cells after the region labeling, otherwise the pipeline.
+   */
+  Object apply(Object pipeline, Stage stage);
+
+  /**
+   * Creates a pipeline for a copy of the image that passes the image after every operation to a listener that ignores
+   * it, as the GUI of Counter.main does, so that it counts the cells with the staged preprocessing.
+   *
+   * @param image Object; The greyscale image, which is not changed.
+   * @return Object; Returns the pipeline.
+   */
+  Object createStagedPipeline(Object image);
+
+  /**
+   * Counts the cells in the image of a pipeline. A pipeline without a listener runs the preprocessing fused.
+   *
+   * @param pipeline Object; The pipeline.
+   * @return int; Returns the number of cells.
+   */
+  int countCells(Object pipeline);
+}
@@ -0,0 +1,57 @@
+package cellcounter.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every operation of the image processing pipeline on its own. The input of an operation is the image after
+ * the operations before it in countCells, which is prepared once per trial, and every invocation applies the operation
+ * to a fresh pipeline of a copy of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmarks {
+  @Param({BenchmarkInputs.BUNDLED_1, BenchmarkInputs.BUNDLED_2, BenchmarkInputs.BUNDLED_3, BenchmarkInputs.BUNDLED_4,
+    BenchmarkInputs.SYNTHETIC_1MP, BenchmarkInputs.SYNTHETIC_4MP, BenchmarkInputs.SYNTHETIC_16MP})
+  public String input;
+
+  @Param
+  public PipelineDriver.Stage stage;
+
+  private PipelineDriver driver;
+  private Object stageInput;
+  private Object pipeline;
+
+  @Setup(Level.Trial)
+  public void prepareInput() throws IOException {
+    driver = PipelineDriver.load();
+    stageInput = driver.prepareInput(BenchmarkInputs.load(driver, input), stage);
+  }
+
+  @Setup(Level.Invocation)
+  public void createPipeline() {
+    pipeline = driver.createPipeline(stageInput);
+  }
+
+  @Benchmark
+  public Object applyStage() {
+    return driver.apply(pipeline, stage);
+  }
+}
@@ -0,0 +1,199 @@
+import java.util.Arrays;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The SIMD kernels implemented with the incubating Java Vector API. The preferred species of the running CPU is used,
+ * e.g. 8 int lanes with AVX2 and 16 with AVX-512. The filters are PaddedRowFilters, so the pixels outside the image
+ * are filled exactly as in the scalar filters, and the three widened rows of the neighbourhood are combined a whole
+ * vector of pixels at a time. Only the non zero weights of a filter are applied. The pixels after the last full vector
+ * of a row are computed by the same scalar formula.
+ * <p>
+ * Compile this class on its own after the rest of the program, and run with the module:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorKernels.java
+ * java --add-modules jdk.incubator.vector Counter ...
+ * </pre>
+ */
+final class VectorKernels implements SimdKernels {
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+  private static final int MAX_INTENSITY = 255;
+
+  /**
+   * Constructor for the VectorKernels class, which fails with a LinkageError if the module is not available.
+   */
+  VectorKernels() {
+    IntVector.zero(INTS);
+  }
+
+  @Override
+  public PaddedRowFilter createSmoothingFilter(int weight, int[][] filter,
+                                               CellCountPipeline.borderModes borderMode) {
+    int weightSum = 0;
+    for (int[] column : filter) {
+      for (int w : column) {
+        if (w < 0) {
+          return null;
+        }
+        weightSum += w;
+      }
+    }
+    if (weight <= 0) {
+      return null;
+    }
+
+    // Integer division has no vector instruction, so the sum is divided by a multiplication and a shift, which is
+    // checked to be exact for every sum that can occur.
+    int maxTotal = weightSum * MAX_INTENSITY;
+    int[] reciprocal = findReciprocal(weight, maxTotal);
+    if (reciprocal == null) {
+      return null;
+    }
+    int multiplier = reciprocal[0];
+    int shift = reciprocal[1];
+
+    return new PaddedRowFilter(borderMode) {
+      @Override
+      void computeRow(int[] above, int[] centre, int[] below, int[] output, int width) {
+        int x = 0;
+        for (int bound = INTS.loopBound(width); x < bound; x += INTS.length()) {
+          IntVector total = IntVector.zero(INTS);
+          for (int j = -1; j <= 1; j++) {
+            int[] row = j < 0 ? above : j == 0 ? centre : below;
+            for (int i = -1; i <= 1; i++) {
+              int w = filter[1 + i][1 + j];
+              if (w != 0) {
+                total = total.add(IntVector.fromArray(INTS, row, x + 1 + i).mul(w));
+              }
+            }
+          }
+          total.mul(multiplier).lanewise(VectorOperators.LSHR, shift).min(MAX_INTENSITY).intoArray(output, x);
+        }
+        for (; x < width; x++) {
+          int total = 0;
+          for (int j = -1; j <= 1; j++) {
+            int[] row = j < 0 ? above : j == 0 ? centre : below;
+            for (int i = -1; i <= 1; i++) {
+              total += row[x + 1 + i] * filter[1 + i][1 + j];
+            }
+          }
+          output[x] = Math.min(MAX_INTENSITY, total / weight);
+        }
+      }
+    };
+  }
+
+  @Override
+  public PaddedRowFilter createCombinedSobelFilters(CellCountPipeline.borderModes borderMode) {
+    return new PaddedRowFilter(borderMode) {
+      @Override
+      void computeRow(int[] above, int[] centre, int[] below, int[] output, int width) {
+        int x = 0;
+        for (int bound = INTS.loopBound(width); x < bound; x += INTS.length()) {
+          IntVector aboveLeft = IntVector.fromArray(INTS, above, x);
+          IntVector aboveRight = IntVector.fromArray(INTS, above, x + 2);
+          IntVector belowLeft = IntVector.fromArray(INTS, below, x);
+          IntVector belowRight = IntVector.fromArray(INTS, below, x + 2);
+          IntVector sobelX = aboveLeft.add(IntVector.fromArray(INTS, centre, x).mul(2)).add(belowLeft)
+            .sub(aboveRight).sub(IntVector.fromArray(INTS, centre, x + 2).mul(2)).sub(belowRight);
+          IntVector sobelY = aboveLeft.add(IntVector.fromArray(INTS, above, x + 1).mul(2)).add(aboveRight)
+            .sub(belowLeft).sub(IntVector.fromArray(INTS, below, x + 1).mul(2)).sub(belowRight);
+          // The sum of the squares is below 2^24, so it is exact as a float and the truncated float square root is the
+          // truncated double square root.
+          FloatVector squares = (FloatVector) sobelX.mul(sobelX).add(sobelY.mul(sobelY))
+            .convert(VectorOperators.I2F, 0);
+          IntVector magnitude = (IntVector) squares.lanewise(VectorOperators.SQRT).convert(VectorOperators.F2I, 0);
+          magnitude.min(MAX_INTENSITY).intoArray(output, x);
+        }
+        for (; x < width; x++) {
+          int sobelX = above[x] + 2 * centre[x] + below[x] - above[x + 2] - 2 * centre[x + 2] - below[x + 2];
+          int sobelY = above[x] + 2 * above[x + 1] + above[x + 2] - below[x] - 2 * below[x + 1] - below[x + 2];
+          output[x] = Math.min(MAX_INTENSITY, (int) Math.sqrt(sobelX * sobelX + sobelY * sobelY));
+        }
+      }
+    };
+  }
+
+  @Override
+  public PaddedRowFilter createLaplaceFilter(CellCountPipeline.borderModes borderMode) {
+    return new PaddedRowFilter(borderMode) {
+      @Override
+      void computeRow(int[] above, int[] centre, int[] below, int[] output, int width) {
+        int x = 0;
+        for (int bound = INTS.loopBound(width); x < bound; x += INTS.length()) {
+          IntVector neighbours = IntVector.fromArray(INTS, above, x)
+            .add(IntVector.fromArray(INTS, above, x + 1))
+            .add(IntVector.fromArray(INTS, above, x + 2))
+            .add(IntVector.fromArray(INTS, centre, x))
+            .add(IntVector.fromArray(INTS, centre, x + 2))
+            .add(IntVector.fromArray(INTS, below, x))
+            .add(IntVector.fromArray(INTS, below, x + 1))
+            .add(IntVector.fromArray(INTS, below, x + 2));
+          IntVector.fromArray(INTS, centre, x + 1).mul(8).sub(neighbours).max(0).min(MAX_INTENSITY)
+            .intoArray(output, x);
+        }
+        for (; x < width; x++) {
+          int neighbours = above[x] + above[x + 1] + above[x + 2] + centre[x] + centre[x + 2] + below[x]
+            + below[x + 1] + below[x + 2];
+          output[x] = Math.min(MAX_INTENSITY, Math.max(0, 8 * centre[x + 1] - neighbours));
+        }
+      }
+    };
+  }
+
+  @Override
+  public void threshold(byte[] row, int threshold, long[] words) {
+    Arrays.fill(words, 0L);
+    if (threshold > MAX_INTENSITY) {
+      return;
+    }
+    byte limit = (byte) Math.max(0, threshold);
+    int width = row.length;
+    int x = 0;
+    // The lanes of a vector divide 64, so the bits of a vector never cross a word.
+    for (int bound = BYTES.loopBound(width); x < bound; x += BYTES.length()) {
+      long bits = ByteVector.fromArray(BYTES, row, x).compare(VectorOperators.UNSIGNED_GE, limit).toLong();
+      words[x >>> 6] |= bits << x;
+    }
+    for (; x < width; x++) {
+      if ((row[x] & 0xFF) >= threshold) {
+        words[x >>> 6] |= 1L << x;
+      }
+    }
+  }
+
+  @Override
+  public String getDescription() {
+    return INTS.length() + " int lanes, " + BYTES.length() + " byte lanes";
+  }
+
+  /**
+   * Finds a multiplier and a shift such that (total * multiplier) >>> shift is total / divisor for every total from 0
+   * to the maximum, without overflowing an int.
+   *
+   * @param divisor  int; The positive divisor.
+   * @param maxTotal int; The largest total.
+   * @return int[]; Returns the multiplier and the shift, or null if there are none.
+   */
+  private static int[] findReciprocal(int divisor, int maxTotal) {
+    for (int shift = 0; shift < Integer.SIZE - 1; shift++) {
+      long multiplier = ((1L << shift) + divisor - 1) / divisor;
+      if (multiplier * maxTotal > Integer.MAX_VALUE) {
+        break;
+      }
+      boolean exact = true;
+      for (int total = 0; total <= maxTotal && exact; total++) {
+        exact = (int) ((total * multiplier) >>> shift) == total / divisor;
+      }
+      if (exact) {
+        return new int[]{(int) multiplier, shift};
+      }
+    }
+    return null;
+  }
+}